@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import aQute.bnd.osgi.Analyzer;
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.EmbeddedResource;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.Resource;
+import aQute.bnd.service.AnalyzerPlugin;
+
+import com.vaadin.flow.osgi.support.BundleClassIndex;
+import com.vaadin.flow.osgi.support.ClassDescriptor;
+import com.vaadin.flow.osgi.support.ClassFileReader;
+
+/**
+ * bnd analyzer plugin which generates the class index of a Vaadin extender
+ * bundle.
+ * <p>
+ * The index is written into the bundle at
+ * {@value BundleClassIndex#DEFAULT_LOCATION} and advertised via the
+ * {@value BundleClassIndex#MANIFEST_HEADER} manifest header. The Vaadin OSGi
+ * support uses the index instead of scanning the bundle classes at runtime.
+ * <p>
+ * Register the plugin in the {@code bnd.bnd} file of the extender bundle:
+ *
+ * <pre>
+ * -plugin.vaadin: com.vaadin.flow.osgi.index.ClassIndexPlugin
+ * </pre>
+ *
+ * and add this artifact as a dependency of the {@code bnd-maven-plugin}.
+ *
+ * @author Vaadin Ltd
+ * @since
+ *
+ */
+public class ClassIndexPlugin implements AnalyzerPlugin {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    @Override
+    public boolean analyzeJar(Analyzer analyzer) throws Exception {
+        String classPath = analyzer.getProperty(Constants.BUNDLE_CLASSPATH);
+        if (classPath != null && !".".equals(classPath.trim())) {
+            // classes of embedded jars are not indexed: the runtime scanning
+            // has to be used for such bundles
+            analyzer.warning("No class index is generated for a bundle with "
+                    + "%s header", Constants.BUNDLE_CLASSPATH);
+            return false;
+        }
+
+        Jar jar = analyzer.getJar();
+        List<String> classNames = new ArrayList<>();
+        List<ClassDescriptor> descriptors = new ArrayList<>();
+        for (Map.Entry<String, Resource> entry : jar.getResources()
+                .entrySet()) {
+            String path = entry.getKey();
+            if (!isClass(path)) {
+                continue;
+            }
+            classNames.add(path
+                    .substring(0, path.length() - CLASS_SUFFIX.length())
+                    .replace('/', '.'));
+            try (InputStream stream = entry.getValue().openInputStream()) {
+                descriptors.add(ClassFileReader.read(stream));
+            } catch (IOException exception) {
+                // the class without a descriptor is loaded at runtime
+                analyzer.warning("Couldn't read class file %s: %s", path,
+                        exception.getMessage());
+            }
+        }
+
+        BundleClassIndex index = new BundleClassIndex(classNames,
+                descriptors);
+        index.setProperty(BundleClassIndex.SYMBOLIC_NAME_PROPERTY,
+                getSymbolicName(analyzer));
+        // the version is informational only: bnd normalizes Bundle-Version
+        // once the analyzer plugins are done, so the runtime doesn't
+        // compare it
+        String version = analyzer.getProperty(Constants.BUNDLE_VERSION);
+        if (version != null) {
+            index.setProperty(BundleClassIndex.VERSION_PROPERTY,
+                    version.trim());
+        }
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        index.write(stream);
+        jar.putResource(BundleClassIndex.DEFAULT_LOCATION,
+                new EmbeddedResource(stream.toByteArray(),
+                        System.currentTimeMillis()));
+        analyzer.setProperty(BundleClassIndex.MANIFEST_HEADER,
+                BundleClassIndex.DEFAULT_LOCATION);
+        return false;
+    }
+
+    private static boolean isClass(String path) {
+        return path.endsWith(CLASS_SUFFIX) && !path.startsWith("META-INF/")
+                && !path.endsWith("module-info.class")
+                && !path.endsWith("package-info.class");
+    }
+
+    private static String getSymbolicName(Analyzer analyzer) {
+        String symbolicName = analyzer.getBsn();
+        int index = symbolicName.indexOf(';');
+        return index < 0 ? symbolicName.trim()
+                : symbolicName.substring(0, index).trim();
+    }
+
+}
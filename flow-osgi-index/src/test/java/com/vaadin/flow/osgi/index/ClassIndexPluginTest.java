@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.index;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.jar.Attributes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import aQute.bnd.osgi.Builder;
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.Resource;
+
+import com.vaadin.flow.osgi.index.sample.SampleView;
+import com.vaadin.flow.osgi.support.BundleClassIndex;
+import com.vaadin.flow.osgi.support.ClassDescriptor;
+
+public class ClassIndexPluginTest {
+
+    @Test
+    public void analyzeJar_indexIsEmbeddedAndAdvertised() throws Exception {
+        try (Builder builder = createBuilder("1.0.0.SNAPSHOT")) {
+            Jar jar = builder.build();
+            Assert.assertTrue(builder.getErrors().toString(), builder.isOk());
+
+            Attributes attributes = jar.getManifest().getMainAttributes();
+            Assert.assertEquals(BundleClassIndex.DEFAULT_LOCATION,
+                    attributes.getValue(BundleClassIndex.MANIFEST_HEADER));
+
+            BundleClassIndex index = readIndex(jar);
+            Assert.assertEquals(
+                    Collections.singletonList(SampleView.class.getName()),
+                    index.getClassNames());
+            Assert.assertTrue(index.isFullyDescribed());
+            ClassDescriptor descriptor = index
+                    .getDescriptor(SampleView.class.getName()).get();
+            Assert.assertEquals(Object.class.getName(),
+                    descriptor.getSuperName());
+            Assert.assertEquals(
+                    Collections.singletonList(Serializable.class.getName()),
+                    descriptor.getInterfaces());
+        }
+    }
+
+    @Test
+    public void analyzeJar_snapshotVersion_indexMatchesBundleSymbolicName()
+            throws Exception {
+        try (Builder builder = createBuilder("1.0-SNAPSHOT")) {
+            builder.setProperty(Constants.SNAPSHOT, "20201231");
+            Jar jar = builder.build();
+            Assert.assertTrue(builder.getErrors().toString(), builder.isOk());
+
+            BundleClassIndex index = readIndex(jar);
+            Assert.assertEquals(
+                    jar.getManifest().getMainAttributes()
+                            .getValue(Constants.BUNDLE_SYMBOLICNAME),
+                    index.getProperty(
+                            BundleClassIndex.SYMBOLIC_NAME_PROPERTY));
+        }
+    }
+
+    @Test
+    public void analyzeJar_bundleClassPath_noIndex() throws Exception {
+        try (Builder builder = createBuilder("1.0.0")) {
+            builder.setProperty(Constants.BUNDLE_CLASSPATH, ".,lib/dep.jar");
+            Jar jar = builder.build();
+
+            Assert.assertNull(
+                    jar.getResource(BundleClassIndex.DEFAULT_LOCATION));
+            Assert.assertFalse(builder.getWarnings().isEmpty());
+        }
+    }
+
+    private static Builder createBuilder(String version) throws Exception {
+        Builder builder = new Builder();
+        builder.addClasspath(new File(SampleView.class.getProtectionDomain()
+                .getCodeSource().getLocation().toURI()));
+        builder.setProperty(Constants.BUNDLE_SYMBOLICNAME,
+                "com.example.views");
+        builder.setProperty(Constants.BUNDLE_VERSION, version);
+        builder.setProperty(Constants.PRIVATEPACKAGE,
+                SampleView.class.getPackage().getName());
+        builder.addBasicPlugin(new ClassIndexPlugin());
+        return builder;
+    }
+
+    private static BundleClassIndex readIndex(Jar jar) throws Exception {
+        Resource resource = jar
+                .getResource(BundleClassIndex.DEFAULT_LOCATION);
+        Assert.assertNotNull(resource);
+        try (InputStream stream = resource.openInputStream()) {
+            return BundleClassIndex.read(stream);
+        }
+    }
+
+}
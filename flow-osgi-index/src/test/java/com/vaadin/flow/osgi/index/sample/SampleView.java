@@ -0,0 +1,15 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.index.sample;
+
+import java.io.Serializable;
+
+public class SampleView implements Serializable {
+
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The scan result of a bundle: the names of the bundle classes and the
+ * {@link ClassDescriptor}s of the classes if they have been read.
+ * <p>
+ * The index may be stored in a simple line based text format and read back.
+ * The stored index contains a set of properties which allow to check whether
+ * the index is still valid for the bundle.
+ * <p>
+ * For internal use only. May be renamed or removed in a future release.
+ *
+ * @author Vaadin Ltd
+ * @since
+ *
+ */
+public final class BundleClassIndex {
+
+    /**
+     * Manifest header which contains the bundle entry path of the class index
+     * generated at build time.
+     */
+    public static final String MANIFEST_HEADER = "Vaadin-OSGi-Class-Index";
+
+    /**
+     * The default bundle entry path of the class index generated at build
+     * time.
+     */
+    public static final String DEFAULT_LOCATION = "META-INF/vaadin/class-index";
+
+    /**
+     * Index property with the symbolic name of the bundle the index is
+     * generated for.
+     */
+    public static final String SYMBOLIC_NAME_PROPERTY = "symbolic-name";
+
+    /**
+     * Index property with the version of the bundle the index is generated
+     * for. The version of an index embedded into a bundle at build time is
+     * informational only.
+     */
+    public static final String VERSION_PROPERTY = "version";
+
+    private static final String HEADER = "# Vaadin OSGi class index";
+
+    private static final String FORMAT_VERSION = "1";
+
+    private static final String NONE = "-";
+
+    private final Map<String, String> properties = new LinkedHashMap<>();
+
+    private final List<String> classNames;
+
+    private final Map<String, ClassDescriptor> descriptors;
+
+    /**
+     * Creates a new index for the class names.
+     *
+     * @param classNames
+     *            the fully qualified names of the classes
+     * @param descriptors
+     *            the descriptors of the classes, may contain descriptors for
+     *            some of the classes only
+     */
+    public BundleClassIndex(Collection<String> classNames,
+            Collection<ClassDescriptor> descriptors) {
+        this.classNames = Collections
+                .unmodifiableList(new ArrayList<>(classNames));
+        Map<String, ClassDescriptor> map = new HashMap<>();
+        descriptors.forEach(
+                descriptor -> map.put(descriptor.getName(), descriptor));
+        this.descriptors = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Gets the class names.
+     *
+     * @return the class names
+     */
+    public List<String> getClassNames() {
+        return classNames;
+    }
+
+    /**
+     * Gets the descriptor of the class with the given {@code className}.
+     *
+     * @param className
+     *            the fully qualified class name
+     * @return the class descriptor, or an empty optional if the class is not
+     *         described by the index
+     */
+    public Optional<ClassDescriptor> getDescriptor(String className) {
+        return Optional.ofNullable(descriptors.get(className));
+    }
+
+    /**
+     * Checks whether all the classes of the index are described by
+     * {@link ClassDescriptor}s.
+     *
+     * @return {@code true} if every class has a descriptor, {@code false}
+     *         otherwise
+     */
+    public boolean isFullyDescribed() {
+        return descriptors.size() == classNames.size();
+    }
+
+    /**
+     * Gets the property value.
+     *
+     * @param name
+     *            the property name
+     * @return the property value, may be {@code null}
+     */
+    public String getProperty(String name) {
+        return properties.get(name);
+    }
+
+    /**
+     * Sets the property value which is written along with the index.
+     * <p>
+     * Property names and values may not contain line breaks and names may
+     * not contain {@code '='}.
+     *
+     * @param name
+     *            the property name
+     * @param value
+     *            the property value
+     */
+    public void setProperty(String name, String value) {
+        properties.put(name, value);
+    }
+
+    /**
+     * Writes the index into the {@code stream}.
+     * <p>
+     * The stream is not closed.
+     *
+     * @param stream
+     *            the output stream to write to
+     * @throws IOException
+     *             if the index couldn't be written
+     */
+    public void write(OutputStream stream) throws IOException {
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+        writer.write(HEADER);
+        writer.write('\n');
+        writer.write("format=" + FORMAT_VERSION + '\n');
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            writer.write(property.getKey() + '=' + property.getValue() + '\n');
+        }
+        writer.write('\n');
+        for (String className : classNames) {
+            ClassDescriptor descriptor = descriptors.get(className);
+            if (descriptor == null) {
+                writer.write(className);
+            } else {
+                writer.write(String.join(" ", className,
+                        descriptor.getSuperName() == null ? NONE
+                                : descriptor.getSuperName(),
+                        join(descriptor.getInterfaces()),
+                        join(descriptor.getAnnotations())));
+            }
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * Reads the index from the {@code stream}.
+     * <p>
+     * The stream is not closed.
+     *
+     * @param stream
+     *            the input stream to read from
+     * @return the index
+     * @throws IOException
+     *             if the index couldn't be read or has unexpected format
+     */
+    public static BundleClassIndex read(InputStream stream)
+            throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(stream, StandardCharsets.UTF_8));
+        if (!HEADER.equals(reader.readLine())
+                || !("format=" + FORMAT_VERSION).equals(reader.readLine())) {
+            throw new IOException("Unsupported class index format");
+        }
+        Map<String, String> properties = new LinkedHashMap<>();
+        String line = reader.readLine();
+        while (line != null && !line.isEmpty()) {
+            int index = line.indexOf('=');
+            if (index < 0) {
+                throw new IOException("Invalid class index property " + line);
+            }
+            properties.put(line.substring(0, index),
+                    line.substring(index + 1));
+            line = reader.readLine();
+        }
+        List<String> classNames = new ArrayList<>();
+        List<ClassDescriptor> descriptors = new ArrayList<>();
+        line = reader.readLine();
+        while (line != null) {
+            String[] parts = line.split(" ");
+            if (parts.length == 4) {
+                descriptors.add(new ClassDescriptor(parts[0],
+                        NONE.equals(parts[1]) ? null : parts[1],
+                        split(parts[2]), new LinkedHashSet<>(split(parts[3]))));
+            } else if (parts.length != 1) {
+                throw new IOException("Invalid class index entry " + line);
+            }
+            classNames.add(parts[0]);
+            line = reader.readLine();
+        }
+        BundleClassIndex result = new BundleClassIndex(classNames,
+                descriptors);
+        result.properties.putAll(properties);
+        return result;
+    }
+
+    private static String join(Collection<String> names) {
+        return names.isEmpty() ? NONE : String.join(",", names);
+    }
+
+    private static List<String> split(String names) {
+        if (NONE.equals(names)) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(names.split(","));
+    }
+
+}
@@ -0,0 +1,856 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.ServiceScope;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size bounded in-memory cache of the resources served from bundles.
+ * <p>
+ * Resources are identified by the bundle revision (the bundle id and its last
+ * modification time) and the path inside the bundle. The least recently used
+ * resources are evicted once the total size exceeds the capacity set via the
+ * {@value #SIZE_PROPERTY} framework property. Resources of a bundle are
+ * dropped once the bundle is updated, unresolved or uninstalled.
+ * <p>
+ * Concurrent requests of the same missing resource read it from the bundle
+ * only once.
+ * <p>
+ * Content encoded variants of a resource are either precompressed siblings
+ * of the resource in the bundle (e.g. {@code vaadin-push.js.gz}) or, for
+ * gzip, compressed once from the cached resource content.
+ * <p>
+ * Resources too big to be kept in memory may be extracted to the bundle data
+ * area once (see {@value #EXTRACT_PROPERTY}) and served from the file system.
+ * <p>
+ * The hit, miss and eviction counts are logged at the debug level of this
+ * class logger once resources are evicted, once the resources of a bundle are
+ * dropped and once the component is deactivated.
+ * <p>
+ * For internal use only. May be renamed or removed in a future release.
+ *
+ * @author Vaadin Ltd
+ * @since
+ *
+ */
+@Component(scope = ServiceScope.SINGLETON, service = BundleResourceCache.class)
+public final class BundleResourceCache implements BundleListener {
+
+    /**
+     * Framework property which sets the capacity of the cache in bytes.
+     * {@code 0} disables caching of the resources content.
+     */
+    public static final String SIZE_PROPERTY = "vaadin.osgi.resources.cache.size";
+
+    /**
+     * Framework property which enables extraction of the resources too big to
+     * be kept in memory to the bundle data area. Extracted resources are
+     * served from the file system.
+     */
+    public static final String EXTRACT_PROPERTY = "vaadin.osgi.resources.extract";
+
+    /**
+     * Framework property which enables asynchronous serving of the resources
+     * kept in memory: the content is written by the servlet container once
+     * the client is ready to receive it instead of blocking a request thread.
+     */
+    public static final String ASYNC_PROPERTY = "vaadin.osgi.resources.async";
+
+    private static final String EXTRACT_DIRECTORY = "resources";
+
+    private static final long DEFAULT_SIZE = 8 * 1024 * 1024L;
+
+    /**
+     * The part of the capacity which one resource may take at most: bigger
+     * resources are always read from the bundle.
+     */
+    private static final int MAX_ENTRY_RATIO = 4;
+
+    private static final int INVALIDATING_EVENTS = BundleEvent.UPDATED
+            | BundleEvent.UNRESOLVED | BundleEvent.UNINSTALLED;
+
+    /**
+     * Marks a missing encoded variant of an existing resource.
+     */
+    private static final Resource ABSENT = new Resource(null, new byte[0], 0,
+            0);
+
+    private volatile File extractDirectory;
+
+    private volatile boolean asyncServing;
+
+    private final LinkedHashMap<Key, Resource> entries = new LinkedHashMap<>(
+            16, 0.75f, true);
+
+    private final Map<Key, CompletableFuture<Optional<Resource>>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private long size;
+
+    private volatile long capacity = DEFAULT_SIZE;
+
+    private BundleContext context;
+
+    /**
+     * Content encodings of the resources.
+     */
+    enum Encoding {
+        BROTLI("br", ".br"), GZIP("gzip", ".gz");
+
+        private final String name;
+
+        private final String extension;
+
+        Encoding(String name, String extension) {
+            this.name = name;
+            this.extension = extension;
+        }
+
+        /**
+         * Gets the name of the encoding used in HTTP headers.
+         *
+         * @return the encoding name
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the file extension of precompressed resources.
+         *
+         * @return the file extension
+         */
+        String getExtension() {
+            return extension;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Loader {
+        Optional<Resource> load() throws IOException;
+    }
+
+    private static final class Key {
+
+        private final long bundleId;
+
+        private final long lastModified;
+
+        private final String path;
+
+        private final Encoding encoding;
+
+        private Key(Bundle bundle, String path, Encoding encoding) {
+            this.encoding = encoding;
+            bundleId = bundle.getBundleId();
+            lastModified = bundle.getLastModified();
+            // the same resource is requested with or without the leading
+            // slash
+            this.path = path.startsWith("/") ? path.substring(1) : path;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return bundleId == other.bundleId
+                    && lastModified == other.lastModified
+                    && path.equals(other.path) && encoding == other.encoding;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(bundleId, lastModified, path, encoding);
+        }
+    }
+
+    /**
+     * A bundle resource either kept in memory or read from the bundle.
+     */
+    static final class Resource {
+
+        private final URL url;
+
+        private final byte[] content;
+
+        private final long length;
+
+        private final long lastModified;
+
+        private final File file;
+
+        private Resource(URL url, byte[] content, long length,
+                long lastModified) {
+            this(url, content, null, length, lastModified);
+        }
+
+        private Resource(URL url, byte[] content, File file, long length,
+                long lastModified) {
+            this.url = url;
+            this.content = content;
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Gets the resource length in bytes.
+         *
+         * @return the resource length, or {@code -1} if it's not known
+         */
+        long getLength() {
+            return length;
+        }
+
+        /**
+         * Gets the last modification time of the resource.
+         *
+         * @return the last modification time in milliseconds
+         */
+        long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Gets the resource content kept in memory. The returned array must
+         * not be modified.
+         *
+         * @return the resource content, or {@code null} if the content is not
+         *         kept in memory
+         */
+        byte[] getContent() {
+            return content;
+        }
+
+        /**
+         * Opens a stream to read the resource content.
+         *
+         * @return the content stream
+         * @throws IOException
+         *             if the resource can't be read from the bundle
+         */
+        InputStream openStream() throws IOException {
+            if (file != null) {
+                return Files.newInputStream(file.toPath());
+            }
+            if (content == null) {
+                return url.openStream();
+            }
+            return new ByteArrayInputStream(content);
+        }
+
+        /**
+         * Writes the part of the resource content.
+         * <p>
+         * Extracted resources are transferred by the file channel without
+         * copying the content through the heap.
+         *
+         * @param out
+         *            the stream to write to
+         * @param offset
+         *            the offset of the first byte to write
+         * @param count
+         *            the number of bytes to write
+         * @throws IOException
+         *             if the content can't be read or written
+         */
+        void write(OutputStream out, long offset, long count)
+                throws IOException {
+            if (file != null) {
+                try (FileChannel channel = FileChannel.open(file.toPath(),
+                        StandardOpenOption.READ)) {
+                    WritableByteChannel target = Channels.newChannel(out);
+                    long position = offset;
+                    long remaining = count;
+                    while (remaining > 0) {
+                        long transferred = channel.transferTo(position,
+                                remaining, target);
+                        if (transferred <= 0) {
+                            break;
+                        }
+                        position += transferred;
+                        remaining -= transferred;
+                    }
+                }
+            } else if (content != null) {
+                out.write(content, (int) offset, (int) count);
+            } else {
+                try (InputStream stream = url.openStream()) {
+                    IOUtils.copyLarge(stream, out, offset, count);
+                }
+            }
+        }
+
+        /**
+         * Gets an URL of the resource. The content of the URL is served from
+         * memory if the resource is cached.
+         *
+         * @return the resource URL
+         */
+        URL getURL() {
+            if (file != null) {
+                try {
+                    return file.toURI().toURL();
+                } catch (MalformedURLException exception) {
+                    return url;
+                }
+            }
+            if (content == null) {
+                return url;
+            }
+            try {
+                return new URL(null, url.toExternalForm(),
+                        new ResourceStreamHandler(this));
+            } catch (MalformedURLException exception) {
+                // can't happen: the URL is already parsed
+                return url;
+            }
+        }
+
+        private int getSize() {
+            return content == null ? 0 : content.length;
+        }
+    }
+
+    private static final class ResourceStreamHandler extends URLStreamHandler {
+
+        private final Resource resource;
+
+        private ResourceStreamHandler(Resource resource) {
+            this.resource = resource;
+        }
+
+        @Override
+        protected URLConnection openConnection(URL url) {
+            return new URLConnection(url) {
+
+                @Override
+                public void connect() {
+                    connected = true;
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    return resource.openStream();
+                }
+
+                @Override
+                public long getContentLengthLong() {
+                    return resource.getLength();
+                }
+
+                @Override
+                public long getLastModified() {
+                    return resource.getLastModified();
+                }
+            };
+        }
+    }
+
+    /**
+     * Activates the component.
+     *
+     * @param context
+     *            the provided bundle context
+     */
+    @Activate
+    void activate(BundleContext context) {
+        capacity = getCapacity(context);
+        asyncServing = Boolean
+                .parseBoolean(context.getProperty(ASYNC_PROPERTY));
+        if (Boolean.parseBoolean(context.getProperty(EXTRACT_PROPERTY))) {
+            File directory = context.getDataFile(EXTRACT_DIRECTORY);
+            if (directory != null) {
+                // resources extracted by the previous run may be stale
+                FileUtils.deleteQuietly(directory);
+                extractDirectory = directory;
+            }
+        }
+        this.context = context;
+        context.addBundleListener(this);
+    }
+
+    /**
+     * Deactivates the component.
+     */
+    @Deactivate
+    void deactivate() {
+        if (context != null) {
+            context.removeBundleListener(this);
+        }
+        logStatistics();
+        synchronized (entries) {
+            entries.clear();
+            size = 0;
+        }
+    }
+
+    @Override
+    public void bundleChanged(BundleEvent event) {
+        if ((event.getType() & INVALIDATING_EVENTS) != 0) {
+            invalidate(event.getBundle().getBundleId());
+        }
+    }
+
+    /**
+     * Gets the resource of the {@code bundle}.
+     *
+     * @param bundle
+     *            the bundle containing the resource
+     * @param path
+     *            the resource path inside the bundle
+     * @return the resource, or an empty optional if there is no resource
+     * @throws IOException
+     *             if the resource can't be read from the bundle
+     */
+    Optional<Resource> getResource(Bundle bundle, String path)
+            throws IOException {
+        return get(new Key(bundle, path, null), () -> load(bundle, path));
+    }
+
+    /**
+     * Gets the content encoded variant of an existing resource of the
+     * {@code bundle}.
+     * <p>
+     * A precompressed sibling of the resource is used if the bundle contains
+     * it. Otherwise a gzip variant is compressed from the cached resource
+     * content if {@code compress} is {@code true} and the compressed content
+     * is smaller.
+     *
+     * @param bundle
+     *            the bundle containing the resource
+     * @param path
+     *            the resource path inside the bundle
+     * @param encoding
+     *            the content encoding
+     * @param compress
+     *            whether the resource content may be compressed if the bundle
+     *            has no precompressed variant
+     * @return the encoded resource, or an empty optional if there is no such
+     *         variant
+     * @throws IOException
+     *             if the resource can't be read from the bundle
+     */
+    Optional<Resource> getEncodedResource(Bundle bundle, String path,
+            Encoding encoding, boolean compress) throws IOException {
+        return get(new Key(bundle, path, encoding), () -> {
+            Optional<Resource> sibling = load(bundle,
+                    path + encoding.getExtension());
+            if (sibling.isPresent() || !compress
+                    || encoding != Encoding.GZIP) {
+                return sibling;
+            }
+            Optional<Resource> resource = getResource(bundle, path);
+            if (!resource.isPresent() || resource.get().content == null) {
+                return Optional.empty();
+            }
+            return gzip(resource.get());
+        });
+    }
+
+    /**
+     * Gets the resource of the {@code bundle} without reading its content.
+     * <p>
+     * The cached resource is returned if there is one. Otherwise the returned
+     * resource carries only the length and the content is read from the
+     * bundle on demand. The resource is not cached.
+     *
+     * @param bundle
+     *            the bundle containing the resource
+     * @param path
+     *            the resource path inside the bundle
+     * @return the resource, or an empty optional if there is no resource
+     * @throws IOException
+     *             if the resource can't be accessed
+     */
+    Optional<Resource> peekResource(Bundle bundle, String path)
+            throws IOException {
+        return peek(new Key(bundle, path, null), () -> probe(bundle, path));
+    }
+
+    /**
+     * Checks whether the {@code bundle} contains the resource.
+     * <p>
+     * The cached resource is used if there is one. Otherwise the bundle is
+     * only asked for the resource URL: neither the content nor the length of
+     * the resource is read.
+     *
+     * @param bundle
+     *            the bundle containing the resource
+     * @param path
+     *            the resource path inside the bundle
+     * @return {@code true} if the bundle contains the resource
+     */
+    boolean containsResource(Bundle bundle, String path) {
+        synchronized (entries) {
+            Resource resource = entries.get(new Key(bundle, path, null));
+            if (resource != null) {
+                hits.incrementAndGet();
+                return resource != ABSENT;
+            }
+        }
+        return bundle.getResource(path) != null;
+    }
+
+    /**
+     * Gets the content encoded variant of an existing resource of the
+     * {@code bundle} without reading its content.
+     * <p>
+     * The cached variant is returned if there is one. Otherwise only a
+     * precompressed sibling of the resource is looked up: the content is
+     * never compressed.
+     *
+     * @param bundle
+     *            the bundle containing the resource
+     * @param path
+     *            the resource path inside the bundle
+     * @param encoding
+     *            the content encoding
+     * @return the encoded resource, or an empty optional if there is no such
+     *         variant
+     * @throws IOException
+     *             if the resource can't be accessed
+     */
+    Optional<Resource> peekEncodedResource(Bundle bundle, String path,
+            Encoding encoding) throws IOException {
+        return peek(new Key(bundle, path, encoding),
+                () -> probe(bundle, path + encoding.getExtension()));
+    }
+
+    private Optional<Resource> peek(Key key, Loader loader)
+            throws IOException {
+        synchronized (entries) {
+            Resource resource = entries.get(key);
+            if (resource != null) {
+                hits.incrementAndGet();
+                return resource == ABSENT ? Optional.empty()
+                        : Optional.of(resource);
+            }
+        }
+        return loader.load();
+    }
+
+    private Optional<Resource> get(Key key, Loader loader) throws IOException {
+        synchronized (entries) {
+            Resource resource = entries.get(key);
+            if (resource != null) {
+                hits.incrementAndGet();
+                return resource == ABSENT ? Optional.empty()
+                        : Optional.of(resource);
+            }
+        }
+        CompletableFuture<Optional<Resource>> future = new CompletableFuture<>();
+        CompletableFuture<Optional<Resource>> pending = loading
+                .putIfAbsent(key, future);
+        if (pending != null) {
+            // the resource is being read by another request
+            hits.incrementAndGet();
+            return await(pending);
+        }
+        misses.incrementAndGet();
+        long invalidation = invalidations.get();
+        try {
+            Optional<Resource> resource = loader.load();
+            if (resource.isPresent()) {
+                store(key, resource.get(), invalidation);
+            } else if (key.encoding != null) {
+                // the resource itself exists, so the number of such entries
+                // is limited
+                store(key, ABSENT, invalidation);
+            }
+            future.complete(resource);
+            return resource;
+        } catch (IOException | RuntimeException exception) {
+            future.completeExceptionally(exception);
+            throw exception;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * Checks whether the resources kept in memory are served asynchronously.
+     *
+     * @return {@code true} if the asynchronous serving is enabled
+     */
+    boolean isAsyncServing() {
+        return asyncServing;
+    }
+
+    /**
+     * Gets the number of the resource requests served without reading the
+     * bundle.
+     *
+     * @return the number of cache hits
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of the resource requests which have read the bundle.
+     *
+     * @return the number of cache misses
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of the resources evicted because the cache capacity is
+     * exceeded.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the total size of the cached resources.
+     *
+     * @return the cache size in bytes
+     */
+    public long getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    private Optional<Resource> load(Bundle bundle, String path)
+            throws IOException {
+        long lastModified = bundle.getLastModified();
+        URL url = bundle.getResource(path);
+        if (url == null) {
+            return Optional.empty();
+        }
+        URLConnection connection = url.openConnection();
+        // bundle URL connections open the entry stream once connected: it
+        // has to be closed even if the content isn't read
+        try (InputStream stream = connection.getInputStream()) {
+            long length = connection.getContentLengthLong();
+            if (length < 0 || length > capacity / MAX_ENTRY_RATIO) {
+                File file = extract(bundle, path, stream);
+                return Optional.of(
+                        new Resource(url, null, file, length, lastModified));
+            }
+            byte[] content = IOUtils.toByteArray(stream);
+            return Optional.of(
+                    new Resource(url, content, content.length, lastModified));
+        }
+    }
+
+    private static Optional<Resource> probe(Bundle bundle, String path)
+            throws IOException {
+        long lastModified = bundle.getLastModified();
+        URL url = bundle.getResource(path);
+        if (url == null) {
+            return Optional.empty();
+        }
+        URLConnection connection = url.openConnection();
+        try (InputStream stream = connection.getInputStream()) {
+            return Optional.of(new Resource(url, null,
+                    connection.getContentLengthLong(), lastModified));
+        }
+    }
+
+    private File extract(Bundle bundle, String path, InputStream stream)
+            throws IOException {
+        File directory = extractDirectory;
+        if (directory == null) {
+            return null;
+        }
+        File revisionDirectory = new File(directory,
+                bundle.getBundleId() + File.separator
+                        + bundle.getLastModified());
+        File file = new File(revisionDirectory,
+                path.replace('/', File.separatorChar));
+        if (!file.getCanonicalPath().startsWith(
+                revisionDirectory.getCanonicalPath() + File.separator)) {
+            return null;
+        }
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            LoggerFactory.getLogger(BundleResourceCache.class).debug(
+                    "Couldn't create directory '{}' to extract the resource",
+                    parent);
+            return null;
+        }
+        File temp = File.createTempFile("resource", ".tmp", parent);
+        try {
+            Files.copy(stream, temp.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        return file;
+    }
+
+    private static Optional<Resource> gzip(Resource resource)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                resource.content.length / 2);
+        try (GZIPOutputStream stream = new GZIPOutputStream(bytes)) {
+            stream.write(resource.content);
+        }
+        byte[] content = bytes.toByteArray();
+        if (content.length >= resource.content.length) {
+            // tiny or already compressed content
+            return Optional.empty();
+        }
+        return Optional.of(new Resource(resource.url, content,
+                content.length, resource.lastModified));
+    }
+
+    private void store(Key key, Resource resource, long invalidation) {
+        if ((resource.content == null && resource.file == null)
+                || resource.getSize() > capacity / MAX_ENTRY_RATIO) {
+            return;
+        }
+        synchronized (entries) {
+            if (invalidation != invalidations.get()) {
+                // the resource might be read from a stale bundle revision
+                return;
+            }
+            Resource previous = entries.put(key, resource);
+            if (previous != null) {
+                size -= previous.getSize();
+            }
+            size += resource.getSize();
+            Iterator<Resource> iterator = entries.values().iterator();
+            int evicted = 0;
+            while (size > capacity && iterator.hasNext()) {
+                size -= iterator.next().getSize();
+                iterator.remove();
+                evicted++;
+            }
+            if (evicted > 0) {
+                evictions.addAndGet(evicted);
+                LoggerFactory.getLogger(BundleResourceCache.class).debug(
+                        "{} resources are evicted, consider increasing the "
+                                + "cache capacity via the '{}' property",
+                        evicted, SIZE_PROPERTY);
+                logStatistics();
+            }
+        }
+    }
+
+    private void invalidate(long bundleId) {
+        synchronized (entries) {
+            invalidations.incrementAndGet();
+            Iterator<Map.Entry<Key, Resource>> iterator = entries.entrySet()
+                    .iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Key, Resource> entry = iterator.next();
+                if (entry.getKey().bundleId == bundleId) {
+                    size -= entry.getValue().getSize();
+                    iterator.remove();
+                }
+            }
+        }
+        File directory = extractDirectory;
+        if (directory != null) {
+            FileUtils.deleteQuietly(
+                    new File(directory, String.valueOf(bundleId)));
+        }
+        logStatistics();
+    }
+
+    private void logStatistics() {
+        LoggerFactory.getLogger(BundleResourceCache.class).debug(
+                "Bundle resource cache: {} hits, {} misses, {} evictions, "
+                        + "{} of {} bytes used",
+                getHitCount(), getMissCount(), getEvictionCount(), getSize(),
+                capacity);
+    }
+
+    private static Optional<Resource> await(
+            CompletableFuture<Optional<Resource>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                    "Interrupted while waiting for the resource");
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static long getCapacity(BundleContext context) {
+        String value = context.getProperty(SIZE_PROPERTY);
+        if (value == null) {
+            return DEFAULT_SIZE;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException exception) {
+            LoggerFactory.getLogger(BundleResourceCache.class).warn(
+                    "Invalid value '{}' of the '{}' property, "
+                            + "the default cache size {} is used",
+                    value, SIZE_PROPERTY, DEFAULT_SIZE);
+            return DEFAULT_SIZE;
+        }
+    }
+
+}
@@ -0,0 +1,589 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.commons.io.IOUtils;
+import org.osgi.framework.Bundle;
+import org.osgi.service.http.context.ServletContextHelper;
+import org.slf4j.LoggerFactory;
+
+import com.vaadin.flow.osgi.support.BundleResourceCache.Encoding;
+import com.vaadin.flow.server.HandlerHelper;
+
+/**
+ * Serves resources of a bundle.
+ * <p>
+ * HTTP Whiteboard Resource service doesn't work reliably neither in Felix
+ * Jetty nor in PAX web. So resources are registered via this dedicated servlet
+ * which uses the existing {@link ServletContextHelper} service registered for
+ * the same context path as the Vaadin servlet.
+ * <p>
+ * Responses carry a strong {@code ETag} derived from the bundle revision and
+ * the resource path along with {@code Last-Modified} of the bundle, so
+ * conditional requests of existing resources are answered with
+ * {@code 304 Not Modified} without reading the bundle content. The content
+ * itself is read via {@link BundleResourceCache}.
+ * <p>
+ * Brotli and gzip encoded variants are served to the clients which accept
+ * them: either precompressed {@code .br}/{@code .gz} siblings from the bundle
+ * or, for textual resources, gzip content compressed once by the cache.
+ * <p>
+ * Single byte ranges ({@code Range} and {@code If-Range} headers) are
+ * supported and {@code HEAD} requests are answered without reading the
+ * content.
+ * <p>
+ * If {@link BundleResourceCache#ASYNC_PROPERTY} is enabled, the content kept
+ * in memory is written asynchronously by a {@link WriteListener}, so slow
+ * clients don't hold request threads.
+ *
+ * @author Vaadin Ltd
+ * @since
+ *
+ */
+class BundleResourceServlet extends HttpServlet {
+
+    private static final String ETAG_HEADER = "ETag";
+
+    private static final String LAST_MODIFIED_HEADER = "Last-Modified";
+
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+    private static final String IF_MODIFIED_SINCE_HEADER = "If-Modified-Since";
+
+    private static final String CACHE_CONTROL_HEADER = "Cache-Control";
+
+    private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+
+    private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+
+    private static final String VARY_HEADER = "Vary";
+
+    private static final String ACCEPT_RANGES_HEADER = "Accept-Ranges";
+
+    private static final String RANGE_HEADER = "Range";
+
+    private static final String IF_RANGE_HEADER = "If-Range";
+
+    private static final String CONTENT_RANGE_HEADER = "Content-Range";
+
+    private static final String BYTES_UNIT = "bytes";
+
+    private static final int ASYNC_CHUNK_SIZE = 8 * 1024;
+
+    /**
+     * A range of bytes requested via {@code Range} header.
+     */
+    static final class ByteRange {
+
+        /**
+         * The range which doesn't overlap the resource content.
+         */
+        static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+        private final long start;
+
+        private final long end;
+
+        private ByteRange(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Gets the offset of the first byte of the range.
+         *
+         * @return the first byte offset
+         */
+        long getStart() {
+            return start;
+        }
+
+        /**
+         * Gets the offset of the last byte of the range (inclusive).
+         *
+         * @return the last byte offset
+         */
+        long getEnd() {
+            return end;
+        }
+    }
+
+    private final Bundle bundle;
+
+    private final String path;
+
+    private final BundleResourceCache cache;
+
+    /**
+     * Creates a servlet for the resources of the {@code bundle} located in the
+     * {@code path} directory.
+     *
+     * @param bundle
+     *            the bundle containing the resources
+     * @param path
+     *            the directory of the resources inside the bundle
+     * @param cache
+     *            the cache of the resources content
+     */
+    BundleResourceServlet(Bundle bundle, String path,
+            BundleResourceCache cache) {
+        this.bundle = bundle;
+        this.path = path;
+        this.cache = cache;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+            throws ServletException, IOException {
+        serve(req, resp, true);
+    }
+
+    @Override
+    protected void doHead(HttpServletRequest req, HttpServletResponse resp)
+            throws ServletException, IOException {
+        serve(req, resp, false);
+    }
+
+    private void serve(HttpServletRequest req, HttpServletResponse resp,
+            boolean writeContent) throws IOException {
+        String pathInfo = req.getPathInfo();
+
+        if (pathInfo == null) {
+            resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (HandlerHelper.isPathUnsafe(pathInfo)) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        String resourcePath = path + pathInfo;
+        // the last modification time is changed whenever the bundle is
+        // updated, i.e. a new revision is installed
+        long lastModified = bundle.getLastModified();
+        String eTag = createETag(bundle.getBundleId(), lastModified,
+                resourcePath);
+        List<Encoding> encodings = getAcceptedEncodings(
+                req.getHeaders(ACCEPT_ENCODING_HEADER));
+        boolean conditional = req.getHeader(IF_NONE_MATCH_HEADER) != null
+                || req.getHeader(IF_MODIFIED_SINCE_HEADER) != null;
+        // the validators don't depend on the content: conditional requests
+        // only check the resource existence, without opening it
+        if (conditional && !cache.containsResource(bundle, resourcePath)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (req.getHeader(IF_NONE_MATCH_HEADER) != null) {
+            // If-Modified-Since must be ignored if If-None-Match is present
+            String matchedETag = findMatchedETag(
+                    req.getHeaders(IF_NONE_MATCH_HEADER), eTag, encodings);
+            if (matchedETag != null) {
+                writeNotModified(resp, matchedETag, lastModified);
+                return;
+            }
+        } else if (isNotModifiedSince(req, lastModified)) {
+            writeNotModified(resp, null, lastModified);
+            return;
+        }
+        // HEAD requests get the length without reading the content
+        Optional<BundleResourceCache.Resource> resource = writeContent
+                ? cache.getResource(bundle, resourcePath)
+                : cache.peekResource(bundle, resourcePath);
+        if (!resource.isPresent()) {
+            resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        String mimeType = getServletContext().getMimeType(pathInfo);
+        BundleResourceCache.Resource content = resource.get();
+        for (Encoding encoding : encodings) {
+            // HEAD and GET requests choose the same representation: a variant
+            // compressed on the fly is offered only once it's cached
+            Optional<BundleResourceCache.Resource> encoded = cache
+                    .peekEncodedResource(bundle, resourcePath, encoding);
+            if (writeContent) {
+                // reads the precompressed variant into the cache or
+                // compresses the content for the following requests
+                Optional<BundleResourceCache.Resource> loaded = cache
+                        .getEncodedResource(bundle, resourcePath, encoding,
+                                isCompressible(mimeType));
+                encoded = encoded.isPresent() ? loaded : Optional.empty();
+            }
+            if (encoded.isPresent()) {
+                content = encoded.get();
+                eTag = createETag(eTag, encoding);
+                resp.setHeader(CONTENT_ENCODING_HEADER, encoding.getName());
+                break;
+            }
+        }
+        writeValidators(resp, eTag, lastModified);
+        if (mimeType != null) {
+            resp.setContentType(mimeType);
+        }
+        long length = content.getLength();
+        long offset = 0;
+        long count = length;
+        if (length >= 0) {
+            resp.setHeader(ACCEPT_RANGES_HEADER, BYTES_UNIT);
+            ByteRange range = isRangeApplicable(req, eTag, lastModified)
+                    ? parseRange(req.getHeader(RANGE_HEADER), length)
+                    : null;
+            if (range == ByteRange.UNSATISFIABLE) {
+                resp.setHeader(CONTENT_RANGE_HEADER,
+                        BYTES_UNIT + " */" + length);
+                resp.setStatus(
+                        HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (range != null) {
+                offset = range.getStart();
+                count = range.getEnd() - range.getStart() + 1;
+                resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                resp.setHeader(CONTENT_RANGE_HEADER,
+                        BYTES_UNIT + ' ' + range.getStart() + '-'
+                                + range.getEnd() + '/' + length);
+            }
+            resp.setContentLengthLong(count);
+        }
+        if (!writeContent) {
+            return;
+        }
+        if (count < 0) {
+            try (InputStream stream = content.openStream()) {
+                IOUtils.copy(stream, resp.getOutputStream());
+            }
+        } else if (content.getContent() != null && cache.isAsyncServing()
+                && req.isAsyncSupported()) {
+            AsyncContext asyncContext = req.startAsync();
+            ServletOutputStream out = resp.getOutputStream();
+            out.setWriteListener(new ContentWriter(asyncContext, out,
+                    content.getContent(), (int) offset, (int) count));
+        } else {
+            content.write(resp.getOutputStream(), offset, count);
+        }
+    }
+
+    /**
+     * Writes the content whenever the output stream is ready and completes
+     * the asynchronous request once the content is written.
+     */
+    private static final class ContentWriter implements WriteListener {
+
+        private final AsyncContext asyncContext;
+
+        private final ServletOutputStream out;
+
+        private final byte[] content;
+
+        private final int end;
+
+        private int position;
+
+        private ContentWriter(AsyncContext asyncContext,
+                ServletOutputStream out, byte[] content, int offset,
+                int count) {
+            this.asyncContext = asyncContext;
+            this.out = out;
+            this.content = content;
+            position = offset;
+            end = offset + count;
+        }
+
+        @Override
+        public void onWritePossible() throws IOException {
+            while (out.isReady()) {
+                if (position >= end) {
+                    asyncContext.complete();
+                    return;
+                }
+                int length = Math.min(ASYNC_CHUNK_SIZE, end - position);
+                out.write(content, position, length);
+                position += length;
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            LoggerFactory.getLogger(BundleResourceServlet.class)
+                    .debug("Couldn't write the resource", throwable);
+            asyncContext.complete();
+        }
+    }
+
+    /**
+     * Parses the {@code Range} header value.
+     * <p>
+     * Only a single range is supported: the header with several ranges is
+     * ignored as well as an invalid one, so the whole content is sent.
+     *
+     * @param header
+     *            the header value, may be {@code null}
+     * @param length
+     *            the content length
+     * @return the requested range, {@link ByteRange#UNSATISFIABLE} if the
+     *         range doesn't overlap the content, or {@code null} if the whole
+     *         content should be sent
+     */
+    static ByteRange parseRange(String header, long length) {
+        String prefix = BYTES_UNIT + '=';
+        if (header == null || !header.startsWith(prefix)) {
+            return null;
+        }
+        String spec = header.substring(prefix.length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+        try {
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // suffix range: the last bytes of the content
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return ByteRange.UNSATISFIABLE;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                if (start < 0 || end < start) {
+                    return null;
+                }
+                end = Math.min(end, length - 1);
+            }
+            if (start >= length) {
+                return ByteRange.UNSATISFIABLE;
+            }
+            return new ByteRange(start, end);
+        } catch (NumberFormatException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates a strong entity tag of the resource.
+     * <p>
+     * The bundle content never changes while the bundle revision is the same,
+     * so the bundle identifier, its last modification time and the resource
+     * path identify the resource bytes.
+     *
+     * @param bundleId
+     *            the bundle identifier
+     * @param lastModified
+     *            the bundle last modification time
+     * @param resourcePath
+     *            the path of the resource inside the bundle
+     * @return the quoted entity tag
+     */
+    static String createETag(long bundleId, long lastModified,
+            String resourcePath) {
+        return '"' + Long.toHexString(bundleId) + '-'
+                + Long.toHexString(lastModified) + '-'
+                + Integer.toHexString(resourcePath.hashCode()) + '"';
+    }
+
+    /**
+     * Creates a strong entity tag of the content encoded resource variant.
+     *
+     * @param eTag
+     *            the entity tag of the resource
+     * @param encoding
+     *            the content encoding
+     * @return the quoted entity tag of the variant
+     */
+    static String createETag(String eTag, Encoding encoding) {
+        return eTag.substring(0, eTag.length() - 1) + '-' + encoding.getName()
+                + '"';
+    }
+
+    /**
+     * Gets the supported content encodings accepted by the client in the
+     * order of preference of the server.
+     *
+     * @param headers
+     *            the {@code Accept-Encoding} header values, may be
+     *            {@code null}
+     * @return the accepted encodings
+     */
+    static List<Encoding> getAcceptedEncodings(Enumeration<String> headers) {
+        if (headers == null) {
+            return Collections.emptyList();
+        }
+        Map<String, Boolean> accepted = new HashMap<>();
+        for (String header : Collections.list(headers)) {
+            for (String coding : header.split(",")) {
+                String[] parameters = coding.split(";");
+                String name = parameters[0].trim().toLowerCase(Locale.ENGLISH);
+                boolean acceptable = true;
+                for (int i = 1; i < parameters.length; i++) {
+                    String parameter = parameters[i].trim();
+                    if (parameter.startsWith("q=")) {
+                        acceptable = isPositive(parameter.substring(2));
+                    }
+                }
+                accepted.put(name, acceptable);
+            }
+        }
+        List<Encoding> encodings = new ArrayList<>();
+        for (Encoding encoding : Encoding.values()) {
+            Boolean acceptable = accepted.getOrDefault(encoding.getName(),
+                    accepted.get("*"));
+            if (Boolean.TRUE.equals(acceptable)) {
+                encodings.add(encoding);
+            }
+        }
+        return encodings;
+    }
+
+    /**
+     * Checks whether any of the {@code If-None-Match} header values matches
+     * the entity tag.
+     * <p>
+     * The weak comparison is used as required for {@code If-None-Match}.
+     *
+     * @param headers
+     *            the header values, may be {@code null}
+     * @param eTag
+     *            the current entity tag of the resource
+     * @return {@code true} if the entity tag matches
+     */
+    static boolean matchesETag(Enumeration<String> headers, String eTag) {
+        if (headers == null) {
+            return false;
+        }
+        String opaqueTag = stripWeakPrefix(eTag);
+        for (String header : Collections.list(headers)) {
+            for (String tag : header.split(",")) {
+                String value = tag.trim();
+                if ("*".equals(value)
+                        || opaqueTag.equals(stripWeakPrefix(value))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String findMatchedETag(Enumeration<String> headers,
+            String eTag, List<Encoding> encodings) {
+        List<String> values = headers == null ? Collections.emptyList()
+                : Collections.list(headers);
+        if (matchesETag(Collections.enumeration(values), eTag)) {
+            return eTag;
+        }
+        // the tag of a variant is issued only if the variant exists in the
+        // current bundle revision
+        for (Encoding encoding : encodings) {
+            String variantETag = createETag(eTag, encoding);
+            if (matchesETag(Collections.enumeration(values), variantETag)) {
+                return variantETag;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isRangeApplicable(HttpServletRequest req,
+            String eTag, long lastModified) {
+        String ifRange = req.getHeader(IF_RANGE_HEADER);
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // the strong comparison is required
+            return ifRange.equals(eTag);
+        }
+        try {
+            return lastModified > 0 && req
+                    .getDateHeader(IF_RANGE_HEADER) == lastModified / 1000
+                            * 1000;
+        } catch (IllegalArgumentException exception) {
+            return false;
+        }
+    }
+
+    private static boolean isNotModifiedSince(HttpServletRequest req,
+            long lastModified) {
+        if (lastModified <= 0) {
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = req.getDateHeader(IF_MODIFIED_SINCE_HEADER);
+        } catch (IllegalArgumentException exception) {
+            // invalid date is ignored
+            return false;
+        }
+        // HTTP dates have no milliseconds
+        return ifModifiedSince >= 0
+                && ifModifiedSince >= lastModified / 1000 * 1000;
+    }
+
+    private static void writeNotModified(HttpServletResponse resp,
+            String eTag, long lastModified) {
+        writeValidators(resp, eTag, lastModified);
+        resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
+
+    private static void writeValidators(HttpServletResponse resp, String eTag,
+            long lastModified) {
+        if (eTag != null) {
+            resp.setHeader(ETAG_HEADER, eTag);
+        }
+        resp.setHeader(VARY_HEADER, ACCEPT_ENCODING_HEADER);
+        if (lastModified > 0) {
+            resp.setDateHeader(LAST_MODIFIED_HEADER, lastModified);
+        }
+        // resource URIs are not versioned: the client has to revalidate the
+        // cached resource which is cheap thanks to the validators
+        resp.setHeader(CACHE_CONTROL_HEADER, "no-cache");
+    }
+
+    private static boolean isCompressible(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        return mimeType.startsWith("text/") || mimeType.contains("javascript")
+                || mimeType.contains("json") || mimeType.contains("xml");
+    }
+
+    private static boolean isPositive(String quality) {
+        try {
+            return Float.parseFloat(quality.trim()) > 0;
+        } catch (NumberFormatException exception) {
+            return false;
+        }
+    }
+
+    private static String stripWeakPrefix(String eTag) {
+        return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+    }
+
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Version;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the scan results of bundles in the private data area of the
+ * tracking bundle.
+ * <p>
+ * A stored {@link BundleClassIndex} is used only if the bundle symbolic name,
+ * version, last modification time and the hash of the bundle manifest and
+ * jar entries are the same as at the moment when the index was stored.
+ * Otherwise the bundle has to be scanned again. The index is stored per
+ * bundle symbolic name and version and removed once the bundle is
+ * uninstalled.
+ *
+ * @author Vaadin Ltd
+ * @since
+ *
+ */
+class BundleScanCache {
+
+    private static final String CACHE_DIR = "scan-cache";
+
+    private static final String LAST_MODIFIED = "last-modified";
+
+    private static final String CONTENT_HASH = "content-hash";
+
+    /**
+     * The location prefix of the bundles installed by reference (Felix and
+     * Equinox), i.e. without copying the jar into the framework storage.
+     */
+    private static final String REFERENCE_PREFIX = "reference:";
+
+    private final File directory;
+
+    private BundleScanCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Creates a cache which stores data in the private data area of the
+     * {@code context} bundle.
+     *
+     * @param context
+     *            the bundle context of the tracking bundle
+     * @return the cache, or an empty optional if the framework doesn't have
+     *         file system support
+     */
+    static Optional<BundleScanCache> create(BundleContext context) {
+        File directory = context.getDataFile(CACHE_DIR);
+        if (directory == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new BundleScanCache(directory));
+    }
+
+    /**
+     * Reads the stored index of the {@code bundle}.
+     *
+     * @param bundle
+     *            the scanned bundle
+     * @return the stored index, or an empty optional if there is no index or
+     *         it's stale
+     */
+    Optional<BundleClassIndex> read(Bundle bundle) {
+        File file = getFile(bundle);
+        if (!file.exists()) {
+            return Optional.empty();
+        }
+        BundleClassIndex index;
+        try (InputStream stream = Files.newInputStream(file.toPath())) {
+            index = BundleClassIndex.read(stream);
+        } catch (IOException exception) {
+            LoggerFactory.getLogger(BundleScanCache.class).debug(
+                    "Couldn't read the stored scan result of the bundle {}",
+                    bundle.getSymbolicName(), exception);
+            return Optional.empty();
+        }
+        if (isIndexOf(index, bundle)
+                && Objects.equals(String.valueOf(bundle.getLastModified()),
+                        index.getProperty(LAST_MODIFIED))
+                && Objects.equals(getContentHash(bundle),
+                        index.getProperty(CONTENT_HASH))) {
+            return Optional.of(index);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Stores the {@code index} of the {@code bundle}.
+     *
+     * @param bundle
+     *            the scanned bundle
+     * @param index
+     *            the scan result
+     */
+    void write(Bundle bundle, BundleClassIndex index) {
+        index.setProperty(BundleClassIndex.SYMBOLIC_NAME_PROPERTY,
+                bundle.getSymbolicName());
+        index.setProperty(BundleClassIndex.VERSION_PROPERTY,
+                String.valueOf(bundle.getVersion()));
+        index.setProperty(LAST_MODIFIED,
+                String.valueOf(bundle.getLastModified()));
+        index.setProperty(CONTENT_HASH, getContentHash(bundle));
+        try {
+            Files.createDirectories(directory.toPath());
+            // write to a temporary file first so that a concurrent or
+            // interrupted write never leaves a partial file
+            Path tmp = Files.createTempFile(directory.toPath(), "scan",
+                    ".tmp");
+            try (OutputStream stream = Files.newOutputStream(tmp)) {
+                index.write(stream);
+            }
+            Files.move(tmp, getFile(bundle).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            LoggerFactory.getLogger(BundleScanCache.class).debug(
+                    "Couldn't store the scan result of the bundle {}",
+                    bundle.getSymbolicName(), exception);
+        }
+    }
+
+    /**
+     * Removes the stored index of the {@code bundle}.
+     *
+     * @param bundle
+     *            the uninstalled bundle
+     */
+    void remove(Bundle bundle) {
+        try {
+            Files.deleteIfExists(getFile(bundle).toPath());
+        } catch (IOException exception) {
+            LoggerFactory.getLogger(BundleScanCache.class).debug(
+                    "Couldn't remove the stored scan result of the bundle {}",
+                    bundle.getSymbolicName(), exception);
+        }
+    }
+
+    /**
+     * Checks whether the {@code index} has been created for the
+     * {@code bundle} symbolic name and version.
+     *
+     * @param index
+     *            the class index
+     * @param bundle
+     *            the bundle
+     * @return {@code true} if the index properties match the bundle,
+     *         {@code false} otherwise
+     */
+    private static boolean isIndexOf(BundleClassIndex index, Bundle bundle) {
+        String version = index
+                .getProperty(BundleClassIndex.VERSION_PROPERTY);
+        try {
+            return Objects.equals(bundle.getSymbolicName(),
+                    index.getProperty(BundleClassIndex.SYMBOLIC_NAME_PROPERTY))
+                    && version != null && bundle.getVersion()
+                            .equals(Version.parseVersion(version));
+        } catch (IllegalArgumentException exception) {
+            return false;
+        }
+    }
+
+    private File getFile(Bundle bundle) {
+        // several versions of the same bundle may be installed at once
+        String name = (bundle.getSymbolicName() + '_' + bundle.getVersion())
+                .replaceAll("[^A-Za-z0-9._-]", "_");
+        return new File(directory, name + ".index");
+    }
+
+    private static String getContentHash(Bundle bundle) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(
+                    "SHA-256 algorithm is not available", exception);
+        }
+        digest.update(String.valueOf(bundle.getLocation())
+                .getBytes(StandardCharsets.UTF_8));
+        // The manifest contains the bundle headers along with the build time
+        // (bnd adds it) and the Bundle-ClassPath, so it's changed whenever
+        // the bundle is rebuilt
+        URL manifest = bundle.getEntry("META-INF/MANIFEST.MF");
+        if (manifest != null) {
+            try (InputStream stream = manifest.openStream()) {
+                digest.update(stream.readAllBytes());
+            } catch (IOException exception) {
+                LoggerFactory.getLogger(BundleScanCache.class).debug(
+                        "Couldn't read manifest of the bundle {}",
+                        bundle.getSymbolicName(), exception);
+            }
+        }
+        updateEntries(digest, bundle);
+        StringBuilder builder = new StringBuilder();
+        for (byte value : digest.digest()) {
+            builder.append(String.format("%02x", value));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Adds the names and CRCs of the bundle jar entries to the
+     * {@code digest}: a jar rebuilt with the same manifest and installed from
+     * the same location has a different hash. The entries are read from the
+     * jar central directory, the content is not read.
+     */
+    private static void updateEntries(MessageDigest digest, Bundle bundle) {
+        File file = getLocationFile(bundle.getLocation());
+        if (file == null || !file.isFile()) {
+            return;
+        }
+        try (ZipFile zip = new ZipFile(file)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                digest.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+                buffer.clear();
+                buffer.putLong(entry.getCrc());
+                digest.update(buffer.array());
+            }
+        } catch (IOException exception) {
+            LoggerFactory.getLogger(BundleScanCache.class).debug(
+                    "Couldn't read entries of the bundle {}",
+                    bundle.getSymbolicName(), exception);
+        }
+    }
+
+    private static File getLocationFile(String location) {
+        if (location == null) {
+            return null;
+        }
+        String uri = location.startsWith(REFERENCE_PREFIX)
+                ? location.substring(REFERENCE_PREFIX.length())
+                : location;
+        if (!uri.startsWith("file:")) {
+            return null;
+        }
+        try {
+            return new File(new URI(uri));
+        } catch (URISyntaxException | IllegalArgumentException exception) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Type information of a class which is extracted from the class file without
+ * loading the class.
+ * <p>
+ * For internal use only. May be renamed or removed in a future release.
+ *
+ * @author Vaadin Ltd
+ * @since
+ *
+ */
+public final class ClassDescriptor {
+
+    private final String name;
+
+    private final String superName;
+
+    private final List<String> interfaces;
+
+    private final Set<String> annotations;
+
+    /**
+     * Creates a new class descriptor.
+     *
+     * @param name
+     *            the fully qualified class name, not {@code null}
+     * @param superName
+     *            the fully qualified super class name, may be {@code null}
+     * @param interfaces
+     *            the fully qualified names of directly implemented interfaces,
+     *            not {@code null}
+     * @param annotations
+     *            the fully qualified names of runtime visible annotations
+     *            declared on the class (including annotations nested into
+     *            them), not {@code null}
+     */
+    public ClassDescriptor(String name, String superName,
+            List<String> interfaces, Set<String> annotations) {
+        this.name = Objects.requireNonNull(name);
+        this.superName = superName;
+        this.interfaces = Collections
+                .unmodifiableList(Objects.requireNonNull(interfaces));
+        this.annotations = Collections
+                .unmodifiableSet(Objects.requireNonNull(annotations));
+    }
+
+    /**
+     * Gets the fully qualified class name.
+     *
+     * @return the class name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the fully qualified super class name.
+     *
+     * @return the super class name, or {@code null} for
+     *         {@link java.lang.Object} and module descriptors
+     */
+    public String getSuperName() {
+        return superName;
+    }
+
+    /**
+     * Gets the fully qualified names of the directly implemented interfaces.
+     *
+     * @return the interface names
+     */
+    public List<String> getInterfaces() {
+        return interfaces;
+    }
+
+    /**
+     * Gets the fully qualified names of the runtime visible annotations of
+     * the class.
+     * <p>
+     * Annotations which are used as values of the class annotations (e.g.
+     * repeated annotations inside their container) are also included.
+     *
+     * @return the annotation names
+     */
+    public Set<String> getAnnotations() {
+        return annotations;
+    }
+
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads {@link ClassDescriptor} out of the class file bytes.
+ * <p>
+ * Only the class header and the class level
+ * {@code RuntimeVisibleAnnotations} attribute are interpreted, everything
+ * else is skipped. The class is never loaded.
+ * <p>
+ * For internal use only. May be renamed or removed in a future release.
+ *
+ * @author Vaadin Ltd
+ * @since
+ *
+ */
+public final class ClassFileReader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+    private final DataInputStream input;
+
+    private Object[] constantPool;
+
+    private ClassFileReader(InputStream stream) {
+        input = new DataInputStream(stream);
+    }
+
+    /**
+     * Reads the class descriptor from the class file {@code stream}.
+     * <p>
+     * The stream is not closed.
+     *
+     * @param stream
+     *            the class file content
+     * @return the class descriptor
+     * @throws IOException
+     *             if the stream can't be read or it's not a valid class file
+     */
+    public static ClassDescriptor read(InputStream stream) throws IOException {
+        return new ClassFileReader(stream).read();
+    }
+
+    private ClassDescriptor read() throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        // minor and major versions
+        input.skipBytes(4);
+        readConstantPool();
+
+        // access flags
+        input.readUnsignedShort();
+        String name = getClassName(input.readUnsignedShort());
+        int superIndex = input.readUnsignedShort();
+        String superName = superIndex == 0 ? null : getClassName(superIndex);
+
+        int interfacesCount = input.readUnsignedShort();
+        List<String> interfaces = new ArrayList<>(interfacesCount);
+        for (int i = 0; i < interfacesCount; i++) {
+            interfaces.add(getClassName(input.readUnsignedShort()));
+        }
+
+        // fields and methods
+        skipMembers();
+        skipMembers();
+
+        Set<String> annotations = new HashSet<>();
+        int attributesCount = input.readUnsignedShort();
+        for (int i = 0; i < attributesCount; i++) {
+            String attributeName = getUtf8(input.readUnsignedShort());
+            int length = input.readInt();
+            if (RUNTIME_VISIBLE_ANNOTATIONS.equals(attributeName)) {
+                int count = input.readUnsignedShort();
+                for (int j = 0; j < count; j++) {
+                    readAnnotation(annotations);
+                }
+            } else {
+                skip(length);
+            }
+        }
+        return new ClassDescriptor(name, superName, interfaces, annotations);
+    }
+
+    private void readConstantPool() throws IOException {
+        int count = input.readUnsignedShort();
+        constantPool = new Object[count];
+        for (int i = 1; i < count; i++) {
+            int tag = input.readUnsignedByte();
+            switch (tag) {
+            case 1: // Utf8
+                constantPool[i] = input.readUTF();
+                break;
+            case 7: // Class
+                constantPool[i] = input.readUnsignedShort();
+                break;
+            case 5: // Long
+            case 6: // Double
+                skip(8);
+                // takes two entries in the pool
+                i++;
+                break;
+            case 3: // Integer
+            case 4: // Float
+            case 9: // Fieldref
+            case 10: // Methodref
+            case 11: // InterfaceMethodref
+            case 12: // NameAndType
+            case 17: // Dynamic
+            case 18: // InvokeDynamic
+                skip(4);
+                break;
+            case 15: // MethodHandle
+                skip(3);
+                break;
+            case 8: // String
+            case 16: // MethodType
+            case 19: // Module
+            case 20: // Package
+                skip(2);
+                break;
+            default:
+                throw new IOException(
+                        "Unknown constant pool tag " + tag + " at " + i);
+            }
+        }
+    }
+
+    private void skipMembers() throws IOException {
+        int count = input.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            // access flags, name and descriptor
+            skip(6);
+            int attributesCount = input.readUnsignedShort();
+            for (int j = 0; j < attributesCount; j++) {
+                // attribute name
+                skip(2);
+                skip(input.readInt());
+            }
+        }
+    }
+
+    private void readAnnotation(Set<String> annotations) throws IOException {
+        annotations.add(toClassName(getUtf8(input.readUnsignedShort())));
+        int pairs = input.readUnsignedShort();
+        for (int i = 0; i < pairs; i++) {
+            // element name
+            skip(2);
+            readElementValue(annotations);
+        }
+    }
+
+    private void readElementValue(Set<String> annotations) throws IOException {
+        int tag = input.readUnsignedByte();
+        switch (tag) {
+        case 'e':
+            // enum type and constant name
+            skip(4);
+            break;
+        case '@':
+            readAnnotation(annotations);
+            break;
+        case '[':
+            int count = input.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                readElementValue(annotations);
+            }
+            break;
+        default:
+            // constant value or class info index
+            skip(2);
+        }
+    }
+
+    private String getClassName(int index) throws IOException {
+        Object entry = constantPool[index];
+        if (!(entry instanceof Integer)) {
+            throw new IOException(
+                    "Constant pool entry " + index + " is not a class");
+        }
+        return getUtf8((Integer) entry).replace('/', '.');
+    }
+
+    private String getUtf8(int index) throws IOException {
+        Object entry = constantPool[index];
+        if (!(entry instanceof String)) {
+            throw new IOException(
+                    "Constant pool entry " + index + " is not a string");
+        }
+        return (String) entry;
+    }
+
+    private void skip(int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = input.skipBytes(remaining);
+            if (skipped == 0) {
+                // skip doesn't have to make a progress: read a byte which
+                // throws EOFException at the end of the stream
+                input.readByte();
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static String toClassName(String descriptor) {
+        // type descriptor has "Lcom/example/Annotation;" form
+        if (descriptor.startsWith("L") && descriptor.endsWith(";")) {
+            return descriptor.substring(1, descriptor.length() - 1)
+                    .replace('/', '.');
+        }
+        return descriptor.replace('/', '.');
+    }
+
+}
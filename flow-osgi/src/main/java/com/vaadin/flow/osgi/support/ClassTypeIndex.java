@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.googlecode.gentyref.GenericTypeReflector;
+
+import com.vaadin.flow.internal.AnnotationReader;
+
+/**
+ * Scanned classes of extender bundles indexed by the types requested via
+ * {@link javax.servlet.annotation.HandlesTypes}.
+ * <p>
+ * An annotation type is mapped to the classes annotated with it and any other
+ * type is mapped to its subtypes. The mapping for a type is computed once,
+ * when the type is requested for the first time, and then it's maintained
+ * while bundle classes are added and removed. So a query costs the number of
+ * matching classes instead of the number of all the scanned classes.
+ * <p>
+ * The class is thread safe.
+ *
+ * @author Vaadin Ltd
+ * @since
+ *
+ */
+final class ClassTypeIndex {
+
+    private final Map<Long, Collection<Class<?>>> classes = new HashMap<>();
+
+    private final Map<Class<?>, Map<Long, Set<Class<?>>>> index = new HashMap<>();
+
+    private long generation;
+
+    /**
+     * Sets the {@code bundleClasses} of the bundle identified by the
+     * {@code bundleId}.
+     *
+     * @param bundleId
+     *            the bundle identifier
+     * @param bundleClasses
+     *            the bundle classes
+     * @return the previous classes of the bundle, or {@code null} if there
+     *         were no classes
+     */
+    synchronized Collection<Class<?>> put(Long bundleId,
+            Collection<Class<?>> bundleClasses) {
+        generation++;
+        Collection<Class<?>> previous = classes.put(bundleId, bundleClasses);
+        index.forEach((type, matches) -> {
+            Set<Class<?>> bundleMatches = filter(type, bundleClasses);
+            if (bundleMatches.isEmpty()) {
+                matches.remove(bundleId);
+            } else {
+                matches.put(bundleId, bundleMatches);
+            }
+        });
+        return previous;
+    }
+
+    /**
+     * Removes the classes of the bundle identified by the {@code bundleId}.
+     *
+     * @param bundleId
+     *            the bundle identifier
+     * @return the removed classes, or {@code null} if there were no classes
+     */
+    synchronized Collection<Class<?>> remove(Long bundleId) {
+        generation++;
+        index.values().forEach(matches -> matches.remove(bundleId));
+        return classes.remove(bundleId);
+    }
+
+    /**
+     * Gets the generation of the classes which is changed whenever bundle
+     * classes are added or removed. Results of queries made for the same
+     * generation are the same.
+     *
+     * @return the generation of the classes
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Gets all the classes.
+     *
+     * @return all the classes
+     */
+    synchronized List<Class<?>> getClasses() {
+        List<Class<?>> result = new ArrayList<>();
+        classes.values().forEach(result::addAll);
+        return result;
+    }
+
+    /**
+     * Gets the classes which are annotated with or are subtypes of any of the
+     * {@code types}.
+     *
+     * @param types
+     *            annotation types and supertypes
+     * @return the matching classes
+     */
+    synchronized Set<Class<?>> getClasses(Class<?>... types) {
+        Set<Class<?>> result = new HashSet<>();
+        for (Class<?> type : types) {
+            index.computeIfAbsent(type, this::createMatches).values()
+                    .forEach(result::addAll);
+        }
+        return result;
+    }
+
+    /**
+     * Filters the {@code candidates} which are annotated with or are subtypes
+     * of any of the {@code types}.
+     *
+     * @param types
+     *            annotation types and supertypes
+     * @param candidates
+     *            the classes to filter
+     * @return the matching classes
+     */
+    static Set<Class<?>> filter(Class<?>[] types,
+            Collection<Class<?>> candidates) {
+        Set<Class<?>> result = new HashSet<>();
+        for (Class<?> type : types) {
+            result.addAll(filter(type, candidates));
+        }
+        return result;
+    }
+
+    private Map<Long, Set<Class<?>>> createMatches(Class<?> type) {
+        Map<Long, Set<Class<?>>> matches = new HashMap<>();
+        classes.forEach((bundleId, bundleClasses) -> {
+            Set<Class<?>> bundleMatches = filter(type, bundleClasses);
+            if (!bundleMatches.isEmpty()) {
+                matches.put(bundleId, bundleMatches);
+            }
+        });
+        return matches;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<Class<?>> filter(Class<?> type,
+            Collection<Class<?>> candidates) {
+        if (type.isAnnotation()) {
+            Class<? extends Annotation> annotation = (Class<? extends Annotation>) type;
+            return candidates.stream()
+                    .filter(clazz -> AnnotationReader
+                            .getAnnotationFor(clazz, annotation).isPresent())
+                    .collect(Collectors.toSet());
+        }
+        return candidates.stream()
+                .filter(clazz -> GenericTypeReflector.isSuperType(type, clazz))
+                .collect(Collectors.toSet());
+    }
+
+}
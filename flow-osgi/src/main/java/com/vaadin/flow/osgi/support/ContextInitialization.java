@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Completion signal of the asynchronous Vaadin context initialization.
+ * <p>
+ * The instance is stored as a Vaadin context attribute while the context is
+ * initialized outside of the OSGi event dispatch thread (see
+ * {@link OSGiVaadinInitialization#ASYNC_INIT_PROPERTY}). Servlets wait for
+ * the initialization before handling requests.
+ * <p>
+ * For internal use only. May be renamed or removed in a future release.
+ *
+ * @author Vaadin Ltd
+ * @since
+ *
+ */
+public final class ContextInitialization {
+
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    ContextInitialization() {
+        // created by the OSGi support only
+    }
+
+    /**
+     * Runs the {@code initialization} and signals its completion.
+     *
+     * @param initialization
+     *            the context initialization
+     */
+    void run(Runnable initialization) {
+        try {
+            initialization.run();
+            completion.complete(null);
+        } catch (RuntimeException exception) {
+            fail(exception);
+        } catch (Error error) {
+            // servlets must not wait for the initialization which never ends
+            fail(error);
+            throw error;
+        }
+    }
+
+    /**
+     * Signals the initialization failure.
+     *
+     * @param cause
+     *            the reason of the failure
+     */
+    void fail(Throwable cause) {
+        LoggerFactory.getLogger(ContextInitialization.class)
+                .error("Couldn't initialize Vaadin context", cause);
+        completion.completeExceptionally(cause);
+    }
+
+    /**
+     * Checks whether the initialization is completed (successfully or not).
+     *
+     * @return {@code true} if the initialization is completed
+     */
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    /**
+     * Checks whether the initialization is completed with a failure.
+     * <p>
+     * The context isn't initialized in this case and requests can't be
+     * handled.
+     *
+     * @return {@code true} if the initialization failed
+     */
+    public boolean isFailed() {
+        return completion.isCompletedExceptionally();
+    }
+
+    /**
+     * Waits for the initialization completion at most the given time.
+     *
+     * @param timeout
+     *            the maximum time to wait
+     * @param unit
+     *            the time unit of the {@code timeout}
+     * @return {@code true} if the initialization is completed (see
+     *         {@link #isFailed()} for its outcome), {@code false} if the
+     *         waiting time elapsed
+     * @throws InterruptedException
+     *             if the current thread is interrupted while waiting
+     */
+    public boolean await(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        try {
+            completion.get(timeout, unit);
+        } catch (ExecutionException exception) {
+            // the failure is logged by the initialization itself and
+            // reported by isFailed
+        } catch (TimeoutException exception) {
+            return false;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import javax.servlet.annotation.HandlesTypes;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.vaadin.flow.internal.AnnotationReader;
+
+/**
+ * Selects classes which may be handled by servlet context initializers (see
+ * {@link HandlesTypes}) using {@link ClassDescriptor}s, so that only the
+ * selected classes have to be loaded.
+ * <p>
+ * The selection is a superset of the classes which are really handled:
+ * annotations are considered to be inherited from all the super types. The
+ * exact filtering is done by {@link ServletContainerInitializerClasses}.
+ *
+ * @author Vaadin Ltd
+ * @since
+ *
+ */
+class HandledTypesFilter {
+
+    private final Collection<Class<?>> handledTypes;
+
+    private final Set<String> annotations;
+
+    private final Set<String> types;
+
+    /**
+     * Creates a new filter for the {@code handledTypes}.
+     *
+     * @param handledTypes
+     *            the annotations and the super types handled by servlet
+     *            context initializers
+     */
+    HandledTypesFilter(Collection<Class<?>> handledTypes) {
+        this.handledTypes = handledTypes;
+        annotations = handledTypes.stream().filter(Class::isAnnotation)
+                .map(Class::getName).collect(Collectors.toSet());
+        types = handledTypes.stream().filter(type -> !type.isAnnotation())
+                .map(Class::getName).collect(Collectors.toSet());
+    }
+
+    /**
+     * Selects the names of the classes which may be handled by the
+     * initializers.
+     *
+     * @param descriptors
+     *            the descriptors of the classes to filter mapped by the class
+     *            name
+     * @param externalClassLoader
+     *            loads a class which is not described by the
+     *            {@code descriptors} (a super type declared in another bundle),
+     *            returns {@code null} if the class can't be loaded
+     * @return the selected class names
+     */
+    List<String> select(Map<String, ClassDescriptor> descriptors,
+            Function<String, Class<?>> externalClassLoader) {
+        Map<String, Boolean> matches = new HashMap<>();
+        List<String> result = new ArrayList<>();
+        for (String className : descriptors.keySet()) {
+            if (matches(className, descriptors, externalClassLoader,
+                    matches)) {
+                result.add(className);
+            }
+        }
+        return result;
+    }
+
+    private boolean matches(String className,
+            Map<String, ClassDescriptor> descriptors,
+            Function<String, Class<?>> externalClassLoader,
+            Map<String, Boolean> matches) {
+        Boolean cached = matches.get(className);
+        if (cached != null) {
+            return cached;
+        }
+        // guards against cycles in invalid hierarchies
+        matches.put(className, Boolean.FALSE);
+
+        boolean result;
+        ClassDescriptor descriptor = descriptors.get(className);
+        if (descriptor == null) {
+            result = matchesExternal(className, externalClassLoader);
+        } else if (types.contains(className) || descriptor.getAnnotations()
+                .stream().anyMatch(annotations::contains)) {
+            result = true;
+        } else {
+            List<String> superTypes = new ArrayList<>(
+                    descriptor.getInterfaces());
+            if (descriptor.getSuperName() != null) {
+                superTypes.add(descriptor.getSuperName());
+            }
+            result = superTypes.stream().anyMatch(superType -> matches(
+                    superType, descriptors, externalClassLoader, matches));
+        }
+        matches.put(className, result);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean matchesExternal(String className,
+            Function<String, Class<?>> externalClassLoader) {
+        if (types.contains(className)) {
+            return true;
+        }
+        if (className.startsWith("java.")) {
+            return false;
+        }
+        Class<?> clazz = externalClassLoader.apply(className);
+        if (clazz == null) {
+            return false;
+        }
+        return handledTypes.stream().anyMatch(type -> type.isAnnotation()
+                ? AnnotationReader.getAnnotationFor(clazz,
+                        (Class<? extends Annotation>) type).isPresent()
+                : type.isAssignableFrom(clazz));
+    }
+
+}
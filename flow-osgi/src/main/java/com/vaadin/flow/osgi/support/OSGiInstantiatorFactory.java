@@ -8,10 +8,32 @@
  */
 package com.vaadin.flow.osgi.support;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.ServiceScope;
+import org.slf4j.LoggerFactory;
 
 import com.vaadin.flow.di.DefaultInstantiator;
 import com.vaadin.flow.di.Instantiator;
@@ -20,10 +42,25 @@ import com.vaadin.flow.di.Lookup;
 import com.vaadin.flow.i18n.I18NProvider;
 import com.vaadin.flow.server.VaadinService;
 import com.vaadin.flow.server.VaadinServiceInitListener;
+import com.vaadin.flow.internal.ReflectTools;
+import com.vaadin.flow.shared.Registration;
 
 /**
  * OSGi capable implementation of instantiator factory.
- * 
+ * <p>
+ * Instantiators cache the service init listeners and the
+ * {@link I18NProvider}. The caches are invalidated once the corresponding
+ * services are registered, modified or unregistered: the factory tracks the
+ * services for all the instantiators. The default {@link I18NProvider}
+ * configured via a property is created once per instantiator.
+ * <p>
+ * The invalidations are logged at the debug level of this class logger.
+ * <p>
+ * Instances are created via constructor method handles instead of reflection.
+ * The handles are stored in the classes themselves (see {@link ClassValue}),
+ * so they belong to a bundle revision and are dropped together with its class
+ * loader.
+ *
  * @author Vaadin Ltd
  * @since
  *
@@ -32,35 +69,244 @@ import com.vaadin.flow.server.VaadinServiceInitListener;
         InstantiatorFactory.class }, scope = ServiceScope.SINGLETON)
 public class OSGiInstantiatorFactory implements InstantiatorFactory {
 
+    private static final List<Class<?>> CACHED_TYPES = Collections
+            .unmodifiableList(Arrays.asList(VaadinServiceInitListener.class,
+                    I18NProvider.class));
+
+    private final List<Consumer<Class<?>>> invalidationListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The generation of the cached services shared by all the instantiators:
+     * it's incremented once the services are changed.
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private final ServiceListener serviceListener = this::serviceChanged;
+
+    private BundleContext context;
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType
+            .methodType(void.class);
+
+    private static final MethodType FACTORY_TYPE = MethodType
+            .methodType(Object.class);
+
+    private static final ClassValue<Optional<MethodHandle>> CONSTRUCTORS = new ClassValue<Optional<MethodHandle>>() {
+        @Override
+        protected Optional<MethodHandle> computeValue(Class<?> type) {
+            return findConstructor(type);
+        }
+    };
+
+    /**
+     * A value cached for a generation of the services.
+     */
+    private static final class Cached<T> {
+
+        private final int generation;
+
+        private final T value;
+
+        private Cached(int generation, T value) {
+            this.generation = generation;
+            this.value = value;
+        }
+    }
+
     private static final class OsgiInstantiator extends DefaultInstantiator
             implements Instantiator {
 
         private final Lookup lookup;
 
-        private OsgiInstantiator(VaadinService service) {
+        private final AtomicInteger generation;
+
+        private volatile Cached<List<VaadinServiceInitListener>> serviceInitListeners;
+
+        private volatile Cached<I18NProvider> i18NProvider;
+
+        private volatile Cached<I18NProvider> defaultI18NProvider;
+
+        private OsgiInstantiator(VaadinService service,
+                AtomicInteger generation) {
             super(service);
 
             lookup = service.getContext().getAttribute(Lookup.class);
+            this.generation = generation;
         }
 
         @Override
         public Stream<VaadinServiceInitListener> getServiceInitListeners() {
-            return lookup.lookupAll(VaadinServiceInitListener.class).stream();
+            serviceInitListeners = getCached(serviceInitListeners,
+                    () -> Collections.unmodifiableList(new ArrayList<>(lookup
+                            .lookupAll(VaadinServiceInitListener.class))));
+            return serviceInitListeners.value.stream();
         }
 
         @Override
         public I18NProvider getI18NProvider() {
-            I18NProvider provider = super.getI18NProvider();
+            // the default provider is configured via a property which is
+            // not changed at runtime: one instance is shared by all the calls
+            Cached<I18NProvider> provider = defaultI18NProvider;
             if (provider == null) {
-                provider = lookup.lookup(I18NProvider.class);
+                provider = new Cached<>(0, super.getI18NProvider());
+                defaultI18NProvider = provider;
+            }
+            if (provider.value != null) {
+                return provider.value;
+            }
+            i18NProvider = getCached(i18NProvider,
+                    () -> lookup.lookup(I18NProvider.class));
+            return i18NProvider.value;
+        }
+
+        @Override
+        protected <T> T create(Class<T> type) {
+            return createInstance(type);
+        }
+
+        private <T> Cached<T> getCached(Cached<T> cached, Supplier<T> value) {
+            // the generation is read before the value: if services are
+            // changed concurrently the value is computed again next time
+            int current = generation.get();
+            if (cached != null && cached.generation == current) {
+                return cached;
             }
-            return provider;
+            return new Cached<>(current, value.get());
+        }
+    }
+
+    /**
+     * Creates an instance of the {@code type} using its public no-arg
+     * constructor.
+     * <p>
+     * The same as {@link ReflectTools#createInstance(Class)} but the
+     * constructor is invoked via a cached method handle if the class is
+     * accessible. Exceptions thrown by the constructor are wrapped the same
+     * way.
+     *
+     * @param type
+     *            the class to instantiate
+     * @return the created instance
+     * @throws IllegalArgumentException
+     *             if the instance can't be created
+     */
+    static <T> T createInstance(Class<T> type) {
+        Optional<MethodHandle> constructor = CONSTRUCTORS.get(type);
+        if (!constructor.isPresent()) {
+            // reports the reason why the class can't be instantiated
+            return ReflectTools.createInstance(type);
+        }
+        try {
+            return type.cast(constructor.get().invokeExact());
+        } catch (Throwable throwable) {
+            // reflection wraps everything thrown by the constructor
+            throw new IllegalArgumentException(
+                    "Unable to create an instance of '" + type.getName()
+                            + "'. The constructor threw an exception.",
+                    throwable);
+        }
+    }
+
+    private static Optional<MethodHandle> findConstructor(Class<?> type) {
+        if (!Modifier.isPublic(type.getModifiers())
+                || Modifier.isAbstract(type.getModifiers())
+                || (type.getEnclosingClass() != null
+                        && !Modifier.isStatic(type.getModifiers()))) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(MethodHandles.publicLookup()
+                    .findConstructor(type, CONSTRUCTOR_TYPE)
+                    .asType(FACTORY_TYPE));
+        } catch (NoSuchMethodException | IllegalAccessException exception) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Activates the component.
+     *
+     * @param context
+     *            the provided bundle context
+     */
+    @Activate
+    void activate(BundleContext context) {
+        StringBuilder filter = new StringBuilder("(|");
+        CACHED_TYPES.forEach(type -> filter.append('(')
+                .append(Constants.OBJECTCLASS).append('=')
+                .append(type.getName()).append(')'));
+        filter.append(')');
+        try {
+            context.addServiceListener(serviceListener, filter.toString());
+        } catch (InvalidSyntaxException exception) {
+            LoggerFactory.getLogger(OSGiInstantiatorFactory.class)
+                    .error("Unexpected invalid filter expression", exception);
+            assert false : "Implementation error: Unexpected invalid filter exception is "
+                    + "thrown even though the service filter is constant. Check the exception and update the impl";
+            return;
+        }
+        this.context = context;
+    }
+
+    /**
+     * Deactivates the component.
+     */
+    @Deactivate
+    void deactivate() {
+        if (context != null) {
+            context.removeServiceListener(serviceListener);
         }
     }
 
     @Override
     public Instantiator createInstantitor(VaadinService service) {
-        return new OsgiInstantiator(service);
+        return new OsgiInstantiator(service, generation);
+    }
+
+    /**
+     * Adds a listener which is notified when services cached by the
+     * instantiators are invalidated because the backing OSGi services are
+     * changed. The listener receives the service type, either
+     * {@link VaadinServiceInitListener} or {@link I18NProvider}.
+     * <p>
+     * The invalidations are also logged at the debug level of this class
+     * logger.
+     *
+     * @param listener
+     *            the listener to add
+     * @return a handle that can be used for removing the listener
+     */
+    public Registration addInvalidationListener(Consumer<Class<?>> listener) {
+        invalidationListeners.add(listener);
+        return () -> invalidationListeners.remove(listener);
+    }
+
+    /**
+     * Gets the generation of the services cached by the instantiators.
+     *
+     * @return the current generation
+     */
+    int getGeneration() {
+        return generation.get();
+    }
+
+    private void serviceChanged(ServiceEvent event) {
+        int current = generation.incrementAndGet();
+        Object classes = event.getServiceReference()
+                .getProperty(Constants.OBJECTCLASS);
+        Collection<String> classNames = classes instanceof String[]
+                ? Arrays.asList((String[]) classes)
+                : Collections.emptyList();
+        CACHED_TYPES.stream()
+                .filter(type -> classNames.contains(type.getName()))
+                .forEach(type -> {
+                    LoggerFactory.getLogger(OSGiInstantiatorFactory.class)
+                            .debug("Cached {} services are invalidated, "
+                                    + "generation {}", type.getName(),
+                                    current);
+                    invalidationListeners
+                            .forEach(listener -> listener.accept(type));
+                });
     }
 
 }
@@ -8,12 +8,15 @@
  */
 package com.vaadin.flow.osgi.support;
 
+import java.io.IOException;
 import java.net.URL;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ServiceScope;
+import org.slf4j.LoggerFactory;
 
 import com.vaadin.flow.server.StaticFileHandler;
 import com.vaadin.flow.server.StaticFileHandlerFactory;
@@ -31,10 +34,17 @@ import com.vaadin.flow.shared.ApplicationConstants;
 @Component(scope = ServiceScope.BUNDLE, service = StaticFileHandlerFactory.class)
 public class OSGiStaticFileHandlerFactory implements StaticFileHandlerFactory {
 
+    @Reference
+    private BundleResourceCache resourceCache;
+
     private static class OSGiStaticFileHandler extends StaticFileServer {
 
-        private OSGiStaticFileHandler(VaadinService service) {
+        private final BundleResourceCache resourceCache;
+
+        private OSGiStaticFileHandler(VaadinService service,
+                BundleResourceCache resourceCache) {
             super(service);
+            this.resourceCache = resourceCache;
         }
 
         @Override
@@ -54,17 +64,31 @@ public class OSGiStaticFileHandlerFactory implements StaticFileHandlerFactory {
                     .getBundleContext().getBundles();
             for (Bundle bundle : bundles) {
                 if ("com.vaadin.flow.push".equals(bundle.getSymbolicName())) {
-                    return bundle.getResource("META-INF/resources/" + path);
+                    return getCachedResource(bundle,
+                            "META-INF/resources/" + path);
                 }
             }
             return null;
         }
 
+        private URL getCachedResource(Bundle bundle, String path) {
+            try {
+                return resourceCache.getResource(bundle, path)
+                        .map(BundleResourceCache.Resource::getURL)
+                        .orElse(null);
+            } catch (IOException exception) {
+                LoggerFactory.getLogger(OSGiStaticFileHandlerFactory.class)
+                        .debug("Couldn't cache the resource '{}'", path,
+                                exception);
+                return bundle.getResource(path);
+            }
+        }
+
     }
 
     @Override
     public StaticFileHandler createHandler(VaadinService service) {
-        return new OSGiStaticFileHandler(service);
+        return new OSGiStaticFileHandler(service, resourceCache);
     }
 
 }
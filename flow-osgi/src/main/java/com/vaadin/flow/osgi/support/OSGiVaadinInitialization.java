@@ -19,11 +19,16 @@ import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.net.URL;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleReference;
 import org.osgi.framework.FrameworkUtil;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ServiceScope;
 import org.osgi.service.http.whiteboard.HttpWhiteboardConstants;
@@ -58,15 +63,27 @@ import com.vaadin.pro.licensechecker.LicenseChecker;
 public class OSGiVaadinInitialization implements VaadinServiceInitListener,
         HttpSessionListener, ServletContextListener {
 
+    /**
+     * Framework property which enables initialization of Vaadin contexts in a
+     * dedicated thread instead of the OSGi framework event dispatch thread.
+     * Servlets wait for the initialization before handling requests.
+     */
+    public static final String ASYNC_INIT_PROPERTY = "vaadin.osgi.init.async";
+
     @Reference
     private ServletContainerInitializerClasses initializerClasses;
 
+    @Reference
+    private BundleResourceCache resourceCache;
+
     private static final VaadinServletMarker MARKER_INSTANCE = new VaadinServletMarker();
 
     private static final String PROJECT_NAME = "vaadin-osgi";
 
     private static final String VERSION = readVersion();
 
+    private ExecutorService initExecutor;
+
     private static final class VaadinServletMarker {
     }
 
@@ -78,6 +95,29 @@ public class OSGiVaadinInitialization implements VaadinServiceInitListener,
 
     }
 
+    /**
+     * Activates the component.
+     *
+     * @param context
+     *            the provided bundle context
+     */
+    @Activate
+    void activate(BundleContext context) {
+        if (Boolean.parseBoolean(context.getProperty(ASYNC_INIT_PROPERTY))) {
+            initExecutor = Executors.newSingleThreadExecutor();
+        }
+    }
+
+    /**
+     * Deactivates the component.
+     */
+    @Deactivate
+    void deactivate() {
+        if (initExecutor != null) {
+            initExecutor.shutdownNow();
+        }
+    }
+
     @Override
     public void serviceInit(ServiceInitEvent event) {
         VaadinService service = event.getSource();
@@ -102,6 +142,7 @@ public class OSGiVaadinInitialization implements VaadinServiceInitListener,
         VaadinServletMarker attribute = vaadinContext
                 .getAttribute(VaadinServletMarker.class);
         if (attribute == null) {
+            closeLookup(vaadinContext);
             vaadinContext.removeAttribute(Lookup.class);
             vaadinContext.removeAttribute(VaadinContextInitializer.class);
         }
@@ -152,6 +193,15 @@ public class OSGiVaadinInitialization implements VaadinServiceInitListener,
             tracker.close();
             servletContext.removeAttribute(ServletInitRequirementsTracker.class);
         }
+        servletContext.removeAttribute(ContextInitialization.class);
+        closeLookup(servletContext);
+    }
+
+    private void closeLookup(VaadinServletContext context) {
+        Lookup lookup = context.getAttribute(Lookup.class);
+        if (lookup instanceof ServletInitRequirementsTracker.OsgiLookupImpl) {
+            ((ServletInitRequirementsTracker.OsgiLookupImpl) lookup).close();
+        }
     }
 
     private void initContext(VaadinContext context) {
@@ -161,7 +211,7 @@ public class OSGiVaadinInitialization implements VaadinServiceInitListener,
         try {
             ServletInitRequirementsTracker tracker = new ServletInitRequirementsTracker(
                     findBundle(servletContext), servletContext,
-                    initializerClasses);
+                    initializerClasses, initExecutor, resourceCache);
             servletContext.setAttribute(tracker);
             tracker.open();
         } catch (IllegalContextState exception) {
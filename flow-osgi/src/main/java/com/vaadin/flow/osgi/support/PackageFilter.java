@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.osgi.framework.Bundle;
+
+/**
+ * Packages of an extender bundle which are scanned for classes.
+ * <p>
+ * The packages are declared via {@value #INCLUDE_HEADER} and
+ * {@value #EXCLUDE_HEADER} bundle manifest headers as comma separated package
+ * globs. The {@code *} character in a glob matches any sequence of
+ * characters, a glob ending with {@code .*} matches the package itself as
+ * well, e.g. {@code com.example.ui.*} matches {@code com.example.ui} and all
+ * its subpackages. All the packages are included if there is no include
+ * header, excluded packages take precedence over the included ones.
+ *
+ * @author Vaadin Ltd
+ * @since
+ *
+ */
+final class PackageFilter {
+
+    /**
+     * Bundle manifest header with globs of the packages to scan.
+     */
+    static final String INCLUDE_HEADER = "Vaadin-OSGi-Scan-Include";
+
+    /**
+     * Bundle manifest header with globs of the packages not to scan.
+     */
+    static final String EXCLUDE_HEADER = "Vaadin-OSGi-Scan-Exclude";
+
+    private static final PackageFilter ALL = new PackageFilter(
+            Collections.emptyList(), Collections.emptyList());
+
+    private final List<String> includes;
+
+    private final List<Pattern> includePatterns;
+
+    private final List<Pattern> excludePatterns;
+
+    private PackageFilter(List<String> includes, List<String> excludes) {
+        this.includes = includes;
+        includePatterns = toPatterns(includes);
+        excludePatterns = toPatterns(excludes);
+    }
+
+    /**
+     * Creates a filter using the {@code bundle} headers.
+     *
+     * @param bundle
+     *            the bundle to scan
+     * @return the package filter of the bundle
+     */
+    static PackageFilter of(Bundle bundle) {
+        return parse(bundle.getHeaders().get(INCLUDE_HEADER),
+                bundle.getHeaders().get(EXCLUDE_HEADER));
+    }
+
+    /**
+     * Creates a filter using the header values.
+     *
+     * @param include
+     *            the include header value, may be {@code null}
+     * @param exclude
+     *            the exclude header value, may be {@code null}
+     * @return the package filter
+     */
+    static PackageFilter parse(String include, String exclude) {
+        List<String> includes = split(include);
+        List<String> excludes = split(exclude);
+        if (includes.isEmpty() && excludes.isEmpty()) {
+            return ALL;
+        }
+        return new PackageFilter(includes, excludes);
+    }
+
+    /**
+     * Gets the bundle directories which contain all the included classes.
+     * <p>
+     * Listing of these directories (recursively) instead of the bundle root
+     * avoids walking through the excluded parts of the bundle.
+     *
+     * @return the directories to list
+     */
+    List<String> getRoots() {
+        if (includes.isEmpty()) {
+            return Collections.singletonList("/");
+        }
+        List<String> roots = new ArrayList<>();
+        for (String glob : includes) {
+            int wildcard = glob.indexOf('*');
+            String prefix = wildcard < 0 ? glob : glob.substring(0, wildcard);
+            if (wildcard >= 0) {
+                // only the complete package segments can be listed
+                int dot = prefix.lastIndexOf('.');
+                prefix = dot < 0 ? "" : prefix.substring(0, dot);
+            }
+            roots.add("/" + prefix.replace('.', '/'));
+        }
+        // a directory is listed recursively, so nested ones are not needed
+        return roots.stream().distinct()
+                .filter(root -> roots.stream()
+                        .noneMatch(other -> isNested(root, other)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Checks whether the package of the class is included.
+     *
+     * @param className
+     *            the fully qualified class name
+     * @return {@code true} if the class should be scanned
+     */
+    boolean accept(String className) {
+        int index = className.lastIndexOf('.');
+        String pkg = index < 0 ? "" : className.substring(0, index);
+        return (includePatterns.isEmpty() || matches(includePatterns, pkg))
+                && !matches(excludePatterns, pkg);
+    }
+
+    /**
+     * Filters the included class names.
+     *
+     * @param classNames
+     *            the fully qualified class names
+     * @return the class names which should be scanned
+     */
+    List<String> filter(Collection<String> classNames) {
+        if (this == ALL) {
+            return new ArrayList<>(classNames);
+        }
+        return classNames.stream().filter(this::accept)
+                .collect(Collectors.toList());
+    }
+
+    private static boolean isNested(String root, String other) {
+        if (root.equals(other)) {
+            return false;
+        }
+        return "/".equals(other) || root.startsWith(other + "/");
+    }
+
+    private static boolean matches(List<Pattern> patterns, String pkg) {
+        return patterns.stream()
+                .anyMatch(pattern -> pattern.matcher(pkg).matches());
+    }
+
+    private static List<Pattern> toPatterns(List<String> globs) {
+        return globs.stream().map(PackageFilter::toPattern)
+                .collect(Collectors.toList());
+    }
+
+    private static Pattern toPattern(String glob) {
+        StringBuilder regexp = new StringBuilder();
+        String body = glob;
+        boolean subpackages = glob.endsWith(".*");
+        if (subpackages) {
+            body = glob.substring(0, glob.length() - 2);
+        }
+        String[] parts = body.split("\\*", -1);
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                regexp.append(".*");
+            }
+            regexp.append(Pattern.quote(parts[i]));
+        }
+        if (subpackages) {
+            regexp.append("(\\..*)?");
+        }
+        return Pattern.compile(regexp.toString());
+    }
+
+    private static List<String> split(String header) {
+        if (header == null) {
+            return Collections.emptyList();
+        }
+        return Stream.of(header.split(",")).map(String::trim)
+                .filter(glob -> !glob.isEmpty()).collect(Collectors.toList());
+    }
+
+}
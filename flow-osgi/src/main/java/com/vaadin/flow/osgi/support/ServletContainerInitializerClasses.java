@@ -13,9 +13,11 @@ import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.HandlesTypes;
 
-import java.lang.annotation.Annotation;
 import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -26,21 +28,26 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import com.googlecode.gentyref.GenericTypeReflector;
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.ServiceScope;
 import org.slf4j.LoggerFactory;
 
 import com.vaadin.flow.internal.AnnotationReader;
 import com.vaadin.flow.internal.ReflectTools;
 import com.vaadin.flow.internal.UsageStatistics;
-import com.vaadin.flow.router.HasErrorParameter;
 import com.vaadin.flow.server.InvalidApplicationConfigurationException;
 import com.vaadin.flow.server.startup.ClassLoaderAwareServletContainerInitializer;
 import com.vaadin.flow.server.startup.LookupServletContainerInitializer;
@@ -57,13 +64,55 @@ import com.vaadin.flow.server.startup.LookupServletContainerInitializer;
 @Component(scope = ServiceScope.SINGLETON, service = ServletContainerInitializerClasses.class)
 public final class ServletContainerInitializerClasses {
 
+    /**
+     * Framework property which enables the incremental mode: once classes of
+     * a bundle are added or removed only the servlet context initializers
+     * which handle some of these classes are executed again.
+     */
+    public static final String INCREMENTAL_PROPERTY = "vaadin.osgi.initializers.incremental";
+
+    /**
+     * Framework property which sets the number of threads used to run servlet
+     * context initializers for different servlet contexts. Values greater
+     * than {@code 1} enable running of the initializers for several contexts
+     * concurrently. The initializers of one context are always run one after
+     * another.
+     */
+    public static final String THREADS_PROPERTY = "vaadin.osgi.initializers.threads";
+
     private final AtomicReference<Collection<Class<? extends ServletContainerInitializer>>> initializerClasses = new AtomicReference<>();
 
-    private final Map<Long, Collection<Class<?>>> cachedClasses = new ConcurrentHashMap<>();
+    private final ClassTypeIndex cachedClasses = new ClassTypeIndex();
 
     private final Set<ServletContextReference> contexts = Collections
             .newSetFromMap(new ConcurrentHashMap<>());
 
+    private volatile boolean incremental;
+
+    private volatile ExecutorService contextPool;
+
+    private final Map<Class<?>, Optional<HandlesTypes>> handlesTypes = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, HandledClasses> handledClasses = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, Optional<ServletContainerInitializer>> instances = new ConcurrentHashMap<>();
+
+    /**
+     * Classes handled by an initializer for a generation of the scanned
+     * classes.
+     */
+    private static final class HandledClasses {
+
+        private final long generation;
+
+        private final Set<Class<?>> classes;
+
+        private HandledClasses(long generation, Set<Class<?>> classes) {
+            this.generation = generation;
+            this.classes = classes;
+        }
+    }
+
     private static class ServletContextReference
             extends WeakReference<ServletContext> {
 
@@ -101,6 +150,34 @@ public final class ServletContainerInitializerClasses {
         UsageStatistics.markAsUsed("flow/osgi", getOSGiVersion());
     }
 
+    /**
+     * Activates the component.
+     *
+     * @param context
+     *            the provided bundle context
+     */
+    @Activate
+    void activate(BundleContext context) {
+        incremental = Boolean
+                .parseBoolean(context.getProperty(INCREMENTAL_PROPERTY));
+        int threads = getThreads(context);
+        if (threads > 1) {
+            contextPool = Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    /**
+     * Deactivates the component.
+     */
+    @Deactivate
+    void deactivate() {
+        ExecutorService pool = contextPool;
+        contextPool = null;
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
     /**
      * Sets the discovered servlet context initializer classes.
      * <p>
@@ -114,6 +191,9 @@ public final class ServletContainerInitializerClasses {
     public void setServletContainerInitializers(
             Collection<Class<? extends ServletContainerInitializer>> contextInitializers) {
         assert contextInitializers != null;
+        handlesTypes.clear();
+        handledClasses.clear();
+        instances.clear();
         initializerClasses.set(new ArrayList<>(contextInitializers));
     }
 
@@ -138,23 +218,78 @@ public final class ServletContainerInitializerClasses {
      */
     public void addScannedClasses(
             Map<Long, Collection<Class<?>>> extenderClasses) {
-        cachedClasses.putAll(extenderClasses);
-        List<InvalidApplicationConfigurationException> thrown = new ArrayList<>();
+        Set<Class<?>> changedClasses = new HashSet<>();
+        extenderClasses.forEach((bundleId, classes) -> {
+            changedClasses.addAll(classes);
+            Collection<Class<?>> previous = cachedClasses.put(bundleId,
+                    classes);
+            if (previous != null) {
+                changedClasses.addAll(previous);
+            }
+        });
+        resetContexts(changedClasses);
+    }
+
+    /**
+     * Removes classes from the bundle identified by the {@code bundleId}.
+     * <p>
+     * When a bundle becomes inactive its classes should not be used anymore.
+     * This method removes the classes from the bundle from the collection of
+     * discovered classes.
+     *
+     * @param bundleId
+     *            the bundle identifier
+     */
+    public void removeScannedClasses(Long bundleId) {
+        Collection<Class<?>> removed = cachedClasses.remove(bundleId);
+        if (removed == null) {
+            // nothing is changed
+            return;
+        }
+        // handled classes computed before may refer to the removed classes,
+        // don't keep them until the initializers are run again
+        handledClasses.clear();
+        resetContexts(removed);
+    }
+
+    /**
+     * Reruns servlet context initializers for all the tracked contexts.
+     * <p>
+     * In the incremental mode only the initializers which handle some of the
+     * {@code changedClasses} (or handle all the classes) are executed: the
+     * input of other initializers is the same as on their previous run.
+     */
+    private void resetContexts(Collection<Class<?>> changedClasses) {
+        if (!hasInitializers()) {
+            // the contexts are initialized once the initializers are
+            // discovered
+            return;
+        }
+        List<Class<? extends ServletContainerInitializer>> initializers = getApplicableInitializers()
+                .filter(initializer -> !incremental
+                        || isAffected(initializer, changedClasses))
+                .collect(Collectors.toList());
+        if (initializers.isEmpty()) {
+            return;
+        }
+        List<ServletContext> servletContexts = new ArrayList<>();
         Iterator<ServletContextReference> iterator = contexts.iterator();
         while (iterator.hasNext()) {
             WeakReference<ServletContext> ref = iterator.next();
             ServletContext context = ref.get();
             if (context == null) {
                 iterator.remove();
-            }
-            try {
-                resetContextInitializers(context);
-            } catch (InvalidApplicationConfigurationException exception) {
-                // don't stop context initializers processing for different
-                // context, instead initialize all the contexts and then throw
-                thrown.add(exception);
+            } else {
+                servletContexts.add(context);
             }
         }
+        ExecutorService pool = contextPool;
+        List<InvalidApplicationConfigurationException> thrown;
+        if (pool == null || servletContexts.size() < 2) {
+            thrown = runInitializers(initializers, servletContexts);
+        } else {
+            thrown = runInitializers(pool, initializers, servletContexts);
+        }
         // Now if there was an exception throw it.
         // This is a workaround for #9417 which causes an exception being thrown
         // by VaadinAppShellInitializer in our ITs
@@ -164,18 +299,87 @@ public final class ServletContainerInitializerClasses {
     }
 
     /**
-     * Removes classes from the bundle identified by the {@code bundleId}.
-     * <p>
-     * When a bundle becomes inactive its classes should not be used anymore.
-     * This method removes the classes from the bundle from the collection of
-     * discovered classes.
-     *
-     * @param bundleId
-     *            the bundle identifier
+     * Runs the {@code initializers} for every context one after another.
      */
-    public void removeScannedClasses(Long bundleId) {
-        cachedClasses.remove(bundleId);
-        contexts.forEach(this::resetContextInitializers);
+    private List<InvalidApplicationConfigurationException> runInitializers(
+            List<Class<? extends ServletContainerInitializer>> initializers,
+            List<ServletContext> servletContexts) {
+        List<InvalidApplicationConfigurationException> thrown = new ArrayList<>();
+        for (ServletContext context : servletContexts) {
+            try {
+                runInitializers(initializers.stream(), context);
+            } catch (InvalidApplicationConfigurationException exception) {
+                // don't stop context initializers processing for different
+                // context, instead initialize all the contexts and then
+                // throw
+                thrown.add(exception);
+            }
+        }
+        return thrown;
+    }
+
+    /**
+     * Runs the {@code initializers} for every context as a separate task in
+     * the {@code pool} and waits until all the tasks are completed.
+     */
+    private List<InvalidApplicationConfigurationException> runInitializers(
+            ExecutorService pool,
+            List<Class<? extends ServletContainerInitializer>> initializers,
+            List<ServletContext> servletContexts) {
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (ServletContext context : servletContexts) {
+                futures.add(pool.submit(
+                        () -> runInitializers(initializers.stream(), context)));
+            }
+        } catch (RejectedExecutionException exception) {
+            // the pool is shut down once the component is deactivated
+            futures.forEach(task -> task.cancel(true));
+            return runInitializers(initializers, servletContexts);
+        }
+        List<InvalidApplicationConfigurationException> thrown = new ArrayList<>();
+        RuntimeException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException exception) {
+                futures.forEach(task -> task.cancel(true));
+                Thread.currentThread().interrupt();
+                // the contexts are not initialized: don't pretend they are
+                throw new IllegalStateException(
+                        "Interrupted while running servlet context initializers",
+                        exception);
+            } catch (ExecutionException exception) {
+                Throwable cause = exception.getCause();
+                if (cause instanceof InvalidApplicationConfigurationException) {
+                    thrown.add(
+                            (InvalidApplicationConfigurationException) cause);
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else if (failure == null) {
+                    failure = cause instanceof RuntimeException
+                            ? (RuntimeException) cause
+                            : new RuntimeException(cause);
+                }
+            }
+        }
+        // any other exception is thrown once all the contexts are processed,
+        // it has precedence since it would stop the sequential processing
+        if (failure != null) {
+            throw failure;
+        }
+        return thrown;
+    }
+
+    private boolean isAffected(
+            Class<? extends ServletContainerInitializer> initializer,
+            Collection<Class<?>> changedClasses) {
+        Optional<HandlesTypes> types = getHandlesTypes(initializer);
+        if (!types.isPresent()) {
+            return !changedClasses.isEmpty();
+        }
+        return !ClassTypeIndex.filter(types.get().value(), changedClasses)
+                .isEmpty();
     }
 
     /**
@@ -204,14 +408,40 @@ public final class ServletContainerInitializerClasses {
         contexts.remove(new ServletContextReference(servletContext));
     }
 
-    private void resetContextInitializers(ServletContextReference reference) {
-        ServletContext context = reference.get();
-        if (context != null) {
-            resetContextInitializers(context);
+    private void resetContextInitializers(ServletContext context) {
+        runInitializers(getApplicableInitializers(), context);
+    }
+
+    private void runInitializers(
+            Stream<Class<? extends ServletContainerInitializer>> initializers,
+            ServletContext context) {
+        initializers.forEach(initializer -> handleTypes(initializer, context));
+    }
+
+    /**
+     * Gets the types which are handled by the servlet context initializers
+     * via {@link HandlesTypes} annotation.
+     *
+     * @return the handled types, or an empty optional if the initializers are
+     *         not discovered yet or some of them handles all the classes
+     */
+    Optional<Set<Class<?>>> getHandledTypes() {
+        if (!hasInitializers()) {
+            return Optional.empty();
         }
+        Set<Class<?>> result = new HashSet<>();
+        for (Class<? extends ServletContainerInitializer> initializer : getApplicableInitializers()
+                .collect(Collectors.toList())) {
+            Optional<HandlesTypes> types = getHandlesTypes(initializer);
+            if (!types.isPresent()) {
+                return Optional.empty();
+            }
+            result.addAll(Arrays.asList(types.get().value()));
+        }
+        return Optional.of(result);
     }
 
-    private void resetContextInitializers(ServletContext context) {
+    private Stream<Class<? extends ServletContainerInitializer>> getApplicableInitializers() {
         /*
          * exclude dev mode initializer (at least for now) because it doesn't
          * work in its current state anyway (so it's no-op) but its initial
@@ -219,19 +449,19 @@ public final class ServletContainerInitializerClasses {
          * 
          * Lookup is set immediately in the context, so no need to initialize it
          */
-        initializerClasses.get().stream().filter(clazz -> !clazz.getName()
+        return initializerClasses.get().stream().filter(clazz -> !clazz
+                .getName()
                 .equals("com.vaadin.base.devserver.startup.DevModeInitializer")
                 && !clazz.getName()
-                .equals("com.vaadin.flow.server.startup.DevModeInitializer")
-                && !clazz.equals(LookupServletContainerInitializer.class))
-                .map(ReflectTools::createInstance)
-                .forEach(initializer -> handleTypes(initializer, context));
+                        .equals("com.vaadin.flow.server.startup.DevModeInitializer")
+                && !clazz.equals(LookupServletContainerInitializer.class));
     }
 
-    private void handleTypes(ServletContainerInitializer initializer,
+    private void handleTypes(
+            Class<? extends ServletContainerInitializer> initializerClass,
             ServletContext context) {
-        Optional<HandlesTypes> handleTypes = AnnotationReader
-                .getAnnotationFor(initializer.getClass(), HandlesTypes.class);
+        ServletContainerInitializer initializer = getInstance(
+                initializerClass);
         /*
          * Every initializer should be an instance of
          * ClassLoaderAwareServletContainerInitializer : there is a test which
@@ -240,9 +470,11 @@ public final class ServletContainerInitializerClasses {
         assert initializer instanceof ClassLoaderAwareServletContainerInitializer;
         try {
             // don't use onStartup method because a fake servlet context is
-            // passed here: no need to detect classloaders in OSGi case
-            ((ClassLoaderAwareServletContainerInitializer) initializer)
-                    .process(filterClasses(handleTypes.orElse(null)), context);
+            // passed here: no need to detect classloaders in OSGi case.
+            // The cached set is shared so the initializer gets a copy
+            ((ClassLoaderAwareServletContainerInitializer) initializer).process(
+                    new HashSet<>(getHandledClasses(initializerClass)),
+                    context);
         } catch (ServletException e) {
             throw new RuntimeException(
                     "Couldn't run servlet context initializer "
@@ -251,37 +483,75 @@ public final class ServletContainerInitializerClasses {
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private Set<Class<?>> filterClasses(HandlesTypes typesAnnotation) {
-        Set<Class<?>> result = new HashSet<>();
-        if (typesAnnotation == null) {
-            cachedClasses.forEach((bundle, classes) -> result.addAll(classes));
-        } else {
-            Class<?>[] requestedTypes = typesAnnotation.value();
-
-            Predicate<Class<?>> isAnnotation = Class::isAnnotation;
-
-            List<Class<? extends Annotation>> annotations = Stream
-                    .of(requestedTypes).filter(isAnnotation)
-                    .map(clazz -> (Class<? extends Annotation>) clazz)
-                    .collect(Collectors.toList());
+    private Optional<HandlesTypes> getHandlesTypes(Class<?> initializer) {
+        return handlesTypes.computeIfAbsent(initializer,
+                clazz -> AnnotationReader.getAnnotationFor(clazz,
+                        HandlesTypes.class));
+    }
 
-            List<Class<?>> superTypes = Stream.of(requestedTypes)
-                    .filter(isAnnotation.negate()).collect(Collectors.toList());
+    /**
+     * Gets the classes handled by the {@code initializer}. The result is
+     * computed once for every generation of the scanned classes and shared
+     * between all the contexts.
+     */
+    private Set<Class<?>> getHandledClasses(Class<?> initializer) {
+        // the generation is read before the query: if classes are changed
+        // concurrently the result is recomputed on the next call
+        long generation = cachedClasses.getGeneration();
+        HandledClasses handled = handledClasses.get(initializer);
+        if (handled == null || handled.generation != generation) {
+            Set<Class<?>> classes = getHandlesTypes(initializer)
+                    .map(types -> cachedClasses.getClasses(types.value()))
+                    .orElseGet(
+                            () -> new HashSet<>(cachedClasses.getClasses()));
+            handled = new HandledClasses(generation, classes);
+            handledClasses.put(initializer, handled);
+        }
+        return handled.classes;
+    }
 
-            Predicate<Class<?>> hasType = clazz -> annotations.stream()
-                    .anyMatch(annotation -> AnnotationReader
-                            .getAnnotationFor(clazz, annotation).isPresent())
-                    || superTypes.stream()
-                            .anyMatch(superType -> GenericTypeReflector
-                                    .isSuperType(HasErrorParameter.class,
-                                            clazz));
+    /**
+     * Gets an instance of the {@code initializer}. Initializers without
+     * instance fields don't keep any state between runs so their instances
+     * are reused, other initializers are instantiated for every run.
+     */
+    private ServletContainerInitializer getInstance(
+            Class<? extends ServletContainerInitializer> initializer) {
+        return instances
+                .computeIfAbsent(initializer,
+                        clazz -> isStateless(clazz)
+                                ? Optional.of(
+                                        ReflectTools.createInstance(initializer))
+                                : Optional.empty())
+                .orElseGet(() -> ReflectTools.createInstance(initializer));
+    }
 
-            cachedClasses.forEach((bundle, classes) -> result.addAll(classes
-                    .stream().filter(hasType).collect(Collectors.toList())));
+    private static boolean isStateless(Class<?> clazz) {
+        for (Class<?> type = clazz; type != null; type = type
+                .getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
 
+    private static int getThreads(BundleContext context) {
+        String threads = context.getProperty(THREADS_PROPERTY);
+        if (threads == null) {
+            return 1;
+        }
+        try {
+            return Integer.parseInt(threads.trim());
+        } catch (NumberFormatException exception) {
+            LoggerFactory.getLogger(ServletContainerInitializerClasses.class)
+                    .warn("Invalid value '{}' of the '{}' property, "
+                            + "initializers are run in one thread", threads,
+                            THREADS_PROPERTY);
+            return 1;
         }
-        return result;
     }
 
     private static String getOSGiVersion() {
@@ -11,15 +11,9 @@ package com.vaadin.flow.osgi.support;
 import javax.servlet.Servlet;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
-import javax.servlet.http.HttpServlet;
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.lang.ref.WeakReference;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -27,16 +21,21 @@ import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Stream;
 
-import org.apache.commons.io.IOUtils;
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleListener;
+import org.osgi.framework.Constants;
 import org.osgi.framework.FrameworkEvent;
 import org.osgi.framework.FrameworkListener;
 import org.osgi.framework.InvalidSyntaxException;
@@ -54,7 +53,6 @@ import org.slf4j.LoggerFactory;
 import com.vaadin.flow.di.Lookup;
 import com.vaadin.flow.internal.ApplicationClassLoaderAccess;
 import com.vaadin.flow.internal.VaadinContextInitializer;
-import com.vaadin.flow.server.HandlerHelper;
 import com.vaadin.flow.server.VaadinContext;
 import com.vaadin.flow.server.VaadinServlet;
 import com.vaadin.flow.server.VaadinServletContext;
@@ -81,49 +79,9 @@ class ServletInitRequirementsTracker extends
 
     private final ServletContainerInitializerClasses initializerClasses;
 
-    /**
-     * 
-     * HTTP Whiteboard Resource service doesn't work reliably neither in Felix
-     * Jetty nor in PAX web. So resources are registered via this dedicated
-     * servlet which uses the existing {@link ServletContextHelper} service
-     * registered for the same context path as the Vaadin servlet.
-     *
-     */
-    private static class ResourceServlet extends HttpServlet {
-
-        private final Bundle bundle;
-
-        private final String path;
-
-        private ResourceServlet(Bundle bundle, String path) {
-            this.bundle = bundle;
-            this.path = path;
-        }
+    private final Executor initExecutor;
 
-        @Override
-        protected void doGet(HttpServletRequest req, HttpServletResponse resp)
-                throws ServletException, IOException {
-
-            String pathInfo = req.getPathInfo();
-
-            if (pathInfo == null) {
-                resp.setStatus(HttpURLConnection.HTTP_NOT_FOUND);
-                return;
-            }
-            if (HandlerHelper.isPathUnsafe(pathInfo)) {
-                resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
-                return;
-            }
-            URL resource = bundle.getResource(path + pathInfo);
-            if (resource == null) {
-                resp.setStatus(HttpURLConnection.HTTP_NOT_FOUND);
-                return;
-            }
-            try (InputStream stream = resource.openStream()) {
-                IOUtils.copy(stream, resp.getOutputStream());
-            }
-        }
-    }
+    private final BundleResourceCache resourceCache;
 
     private abstract static class ResourceBundleTracker
             extends BundleTracker<Bundle> implements BundleListener {
@@ -138,12 +96,15 @@ class ServletInitRequirementsTracker extends
 
         private WeakReference<Bundle> resourceBundle;
 
+        private final BundleResourceCache resourceCache;
+
         private ResourceBundleTracker(Bundle webAppBundle, String symbolicName,
-                String contextPath) {
+                String contextPath, BundleResourceCache resourceCache) {
             super(webAppBundle.getBundleContext(),
                     Bundle.ACTIVE | Bundle.RESOLVED, null);
             this.contextPath = contextPath;
             this.symbolicName = symbolicName;
+            this.resourceCache = resourceCache;
             webAppBundle.getBundleContext().addBundleListener(this);
         }
 
@@ -201,9 +162,15 @@ class ServletInitRequirementsTracker extends
                         "(" + HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_NAME
                                 + "=" + contextName + ")");
             }
+            if (resourceCache.isAsyncServing()) {
+                properties.put(
+                        HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_ASYNC_SUPPORTED,
+                        Boolean.TRUE.toString());
+            }
             resourceRegistration = bundle.getBundleContext().registerService(
                     Servlet.class,
-                    new ResourceServlet(bundle, getResourcePath()), properties);
+                    new BundleResourceServlet(bundle, getResourcePath(),
+                            resourceCache), properties);
         }
 
         private String getContextName() {
@@ -310,8 +277,9 @@ class ServletInitRequirementsTracker extends
             extends ResourceBundleTracker {
 
         private PushResourceBundleTracker(Bundle webAppBundle,
-                String contextPath) {
-            super(webAppBundle, "com.vaadin.flow.push", contextPath);
+                String contextPath, BundleResourceCache resourceCache) {
+            super(webAppBundle, "com.vaadin.flow.push", contextPath,
+                    resourceCache);
         }
 
         @Override
@@ -326,53 +294,288 @@ class ServletInitRequirementsTracker extends
 
     }
 
+    /**
+     * Tracks the services of one SPI type and keeps a snapshot of them
+     * ordered by the service ranking (the highest ranking first). The
+     * snapshot is rebuilt on the first lookup after a service event.
+     */
+    private static class LookupTracker<T> extends ServiceTracker<T, T> {
+
+        private volatile Snapshot<T> snapshot;
+
+        private LookupTracker(BundleContext context, Class<T> serviceClass) {
+            super(context, serviceClass, null);
+        }
+
+        private List<T> getSnapshot() {
+            int trackingCount = getTrackingCount();
+            Snapshot<T> current = snapshot;
+            if (current != null && current.trackingCount == trackingCount) {
+                return current.services;
+            }
+            // the tracked map is sorted in the ascending ranking order
+            List<T> services = new ArrayList<>(getTracked().values());
+            Collections.reverse(services);
+            // the count is read before the services: if there is a
+            // concurrent event the snapshot is rebuilt on the next lookup
+            current = new Snapshot<>(trackingCount,
+                    Collections.unmodifiableList(services));
+            snapshot = current;
+            return current.services;
+        }
+    }
+
+    private static final class Snapshot<T> {
+
+        private final int trackingCount;
+
+        private final List<T> services;
+
+        private Snapshot(int trackingCount, List<T> services) {
+            this.trackingCount = trackingCount;
+            this.services = services;
+        }
+    }
+
+    /**
+     * Services registered for a concrete class along with their references
+     * (the highest ranking first).
+     */
+    private static final class RegisteredServices {
+
+        private static final RegisteredServices NONE = new RegisteredServices(
+                Collections.emptyList(), Collections.emptyList());
+
+        private final List<ServiceReference<?>> references;
+
+        private final List<?> services;
+
+        private RegisteredServices(List<ServiceReference<?>> references,
+                List<?> services) {
+            this.references = references;
+            this.services = services;
+        }
+
+        private boolean isValid() {
+            // the unregistering event may be dispatched before the services
+            // are queried: the reference has no bundle once it's unregistered
+            return references.stream()
+                    .allMatch(reference -> reference.getBundle() != null);
+        }
+    }
+
     static class OsgiLookupImpl implements Lookup {
 
         private final VaadinServletContext context;
 
         private final Bundle webAppBundle;
 
-        private OsgiLookupImpl(Bundle webAppBundle,
-                VaadinServletContext context) {
+        private final Map<Class<?>, LookupTracker<?>> trackers = new ConcurrentHashMap<>();
+
+        private final Map<String, RegisteredServices> registeredServices = new ConcurrentHashMap<>();
+
+        private ServiceListener serviceListener;
+
+        /**
+         * The concrete classes the service listener is registered for.
+         */
+        private final Set<String> listenedClasses = new LinkedHashSet<>();
+
+        private boolean closed;
+
+        OsgiLookupImpl(Bundle webAppBundle, VaadinServletContext context) {
             this.webAppBundle = webAppBundle;
             this.context = context;
         }
 
         @Override
         public <T> T lookup(Class<T> serviceClass) {
-            ServiceReference<T> reference = getWebAppBundle().getBundleContext()
-                    .getServiceReference(serviceClass);
-            if (reference == null) {
+            List<T> services = getServices(serviceClass);
+            if (services.isEmpty()) {
                 LoggerFactory.getLogger(OsgiLookupImpl.class)
                         .debug("No service found for '{}' SPI", serviceClass);
                 return null;
             }
-            return getWebAppBundle().getBundleContext().getService(reference);
+            return services.get(0);
         }
 
         @Override
         public <T> Collection<T> lookupAll(Class<T> serviceClass) {
-            Bundle bundle = getWebAppBundle();
+            // the callers may modify the returned collection
+            return new ArrayList<>(getServices(serviceClass));
+        }
+
+        /**
+         * Closes the service trackers of the lookup.
+         */
+        void close() {
+            List<RegisteredServices> released;
+            synchronized (trackers) {
+                closed = true;
+                trackers.values().forEach(ServiceTracker::close);
+                trackers.clear();
+                if (serviceListener != null) {
+                    getWebAppBundle().getBundleContext()
+                            .removeServiceListener(serviceListener);
+                    serviceListener = null;
+                }
+                listenedClasses.clear();
+                released = new ArrayList<>(registeredServices.values());
+                registeredServices.clear();
+            }
+            released.forEach(this::release);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> List<T> getServices(Class<T> serviceClass) {
+            if (!isSpi(serviceClass)) {
+                // Instantiator looks up every created class (e.g. a route
+                // target) before instantiating it: there is no point to keep
+                // a tracker for each of them
+                return getRegisteredServices(serviceClass);
+            }
+            LookupTracker<T> tracker = (LookupTracker<T>) trackers
+                    .get(serviceClass);
+            if (tracker != null) {
+                return tracker.getSnapshot();
+            }
+            synchronized (trackers) {
+                if (closed) {
+                    // the context is destroyed: the services can't be used
+                    return Collections.emptyList();
+                }
+                tracker = (LookupTracker<T>) trackers.get(serviceClass);
+                if (tracker == null) {
+                    tracker = new LookupTracker<>(
+                            getWebAppBundle().getBundleContext(),
+                            serviceClass);
+                    tracker.open();
+                    trackers.put(serviceClass, tracker);
+                }
+            }
+            return tracker.getSnapshot();
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> List<T> getRegisteredServices(Class<T> serviceClass) {
+            String name = serviceClass.getName();
+            RegisteredServices cached = registeredServices.get(name);
+            if (cached != null && cached.isValid()) {
+                return (List<T>) cached.services;
+            }
+            RegisteredServices stale = null;
+            synchronized (trackers) {
+                if (closed) {
+                    return Collections.emptyList();
+                }
+                if (listenedClasses.add(name)) {
+                    listenToServices();
+                }
+                cached = registeredServices.get(name);
+                if (cached == null || !cached.isValid()) {
+                    stale = cached;
+                    cached = queryServices(serviceClass);
+                    registeredServices.put(name, cached);
+                }
+            }
+            if (stale != null) {
+                release(stale);
+            }
+            return (List<T>) cached.services;
+        }
+
+        /**
+         * Registers the service listener for the services of the listened
+         * classes only: the filter of the already registered listener is
+         * replaced.
+         */
+        private void listenToServices() {
+            if (serviceListener == null) {
+                serviceListener = this::serviceChanged;
+            }
+            StringBuilder filter = new StringBuilder("(|");
+            listenedClasses.forEach(name -> filter.append('(')
+                    .append(Constants.OBJECTCLASS).append('=').append(name)
+                    .append(')'));
+            filter.append(')');
             try {
-                Collection<ServiceReference<T>> references = bundle
-                        .getBundleContext()
-                        .getServiceReferences(serviceClass, null);
-                List<T> services = new ArrayList<>(references.size());
-                for (ServiceReference<T> reference : references) {
-                    T service = bundle.getBundleContext().getService(reference);
+                getWebAppBundle().getBundleContext()
+                        .addServiceListener(serviceListener, filter.toString());
+            } catch (InvalidSyntaxException e) {
+                LoggerFactory.getLogger(ServletInitRequirementsTracker.class)
+                        .error("Unexpected invalid filter expression", e);
+                assert false : "Implementation error: Unexpected invalid filter exception is "
+                        + "thrown even though the service filter consists of class names. Check the exception and update the impl";
+            }
+        }
+
+        private RegisteredServices queryServices(Class<?> serviceClass) {
+            BundleContext bundleContext = getWebAppBundle().getBundleContext();
+            try {
+                List<ServiceReference<?>> references = new ArrayList<>(
+                        bundleContext.getServiceReferences(serviceClass,
+                                null));
+                if (references.isEmpty()) {
+                    return RegisteredServices.NONE;
+                }
+                // the highest ranking first
+                references.sort(Collections.reverseOrder());
+                List<ServiceReference<?>> used = new ArrayList<>(
+                        references.size());
+                List<Object> services = new ArrayList<>(references.size());
+                for (ServiceReference<?> reference : references) {
+                    Object service = bundleContext.getService(reference);
                     if (service != null) {
+                        used.add(reference);
                         services.add(service);
                     }
                 }
-                return services;
+                return new RegisteredServices(used,
+                        Collections.unmodifiableList(services));
             } catch (InvalidSyntaxException e) {
                 LoggerFactory.getLogger(ServletInitRequirementsTracker.class)
                         .error("Unexpected invalid filter expression", e);
                 assert false : "Implementation error: Unexpected invalid filter exception is "
                         + "thrown even though the service filter is null. Check the exception and update the impl";
             }
+            return RegisteredServices.NONE;
+        }
+
+        private void serviceChanged(ServiceEvent event) {
+            Object classes = event.getServiceReference()
+                    .getProperty(Constants.OBJECTCLASS);
+            if (!(classes instanceof String[])) {
+                return;
+            }
+            List<RegisteredServices> released = new ArrayList<>();
+            synchronized (trackers) {
+                for (String name : (String[]) classes) {
+                    RegisteredServices removed = registeredServices
+                            .remove(name);
+                    if (removed != null) {
+                        released.add(removed);
+                    }
+                }
+            }
+            released.forEach(this::release);
+        }
 
-            return Collections.emptyList();
+        private void release(RegisteredServices services) {
+            BundleContext bundleContext = getWebAppBundle().getBundleContext();
+            for (ServiceReference<?> reference : services.references) {
+                try {
+                    bundleContext.ungetService(reference);
+                } catch (IllegalStateException exception) {
+                    // the web app bundle is stopped: its services are
+                    // released by the framework
+                    return;
+                }
+            }
+        }
+
+        private static boolean isSpi(Class<?> serviceClass) {
+            return serviceClass.isInterface()
+                    || Modifier.isAbstract(serviceClass.getModifiers());
         }
 
         private Bundle getWebAppBundle() {
@@ -391,15 +594,23 @@ class ServletInitRequirementsTracker extends
      *            the Vaadin servlet context
      * @param initializerClasses
      *            {@link ServletContainerInitializerClasses} instance
+     * @param initExecutor
+     *            the executor to initialize the context asynchronously, or
+     *            {@code null} to initialize it in the service event thread
+     * @param resourceCache
+     *            the cache of the resources served from bundles
      */
     ServletInitRequirementsTracker(Bundle webAppBundle,
             VaadinServletContext context,
-            ServletContainerInitializerClasses initializerClasses) {
+            ServletContainerInitializerClasses initializerClasses,
+            Executor initExecutor, BundleResourceCache resourceCache) {
         super(webAppBundle.getBundleContext(),
                 ServletInitializationRequirements.class, null);
         this.webAppBundle = webAppBundle;
         servletContext = context;
         this.initializerClasses = initializerClasses;
+        this.initExecutor = initExecutor;
+        this.resourceCache = resourceCache;
         webAppBundle.getBundleContext().addBundleListener(this);
     }
 
@@ -415,7 +626,25 @@ class ServletInitRequirementsTracker extends
             servletContext
                     .removeAttribute(ServletInitRequirementsTracker.class);
         }
-        initializeLookup();
+        if (initExecutor == null) {
+            initializeLookup();
+        } else {
+            // don't block the framework event dispatch: servlets wait for
+            // the initialization completion instead. The initialization of
+            // the replaced requirements is completed already, so servlets
+            // have to wait for a new one
+            ContextInitialization initialization = new ContextInitialization();
+            servletContext.setAttribute(ContextInitialization.class,
+                    initialization);
+            try {
+                initExecutor.execute(
+                        () -> initialization.run(this::initializeLookup));
+            } catch (RejectedExecutionException exception) {
+                // the executor is shut down once the OSGi support is
+                // deactivated
+                initialization.fail(exception);
+            }
+        }
         return requirements;
     }
 
@@ -573,7 +802,7 @@ class ServletInitRequirementsTracker extends
 
     private void registerPushResources(String contextPath) {
         ResourceBundleTracker resourceBoundleTracker = new PushResourceBundleTracker(
-                webAppBundle, contextPath);
+                webAppBundle, contextPath, resourceCache);
         resourceBoundleTracker.open();
     }
 
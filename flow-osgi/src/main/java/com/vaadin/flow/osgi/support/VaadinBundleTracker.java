@@ -10,20 +10,50 @@ package com.vaadin.flow.osgi.support;
 
 import javax.servlet.ServletContainerInitializer;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executor;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.framework.wiring.BundleRequirement;
+import org.osgi.framework.wiring.BundleRevision;
 import org.osgi.framework.wiring.BundleWiring;
 import org.osgi.util.tracker.BundleTracker;
 import org.slf4j.LoggerFactory;
@@ -37,18 +67,144 @@ import org.slf4j.LoggerFactory;
  * 
  * OSGi ServiceComponentRuntime creates the Service immediate while activating
  * the bundle.
+ * <p>
+ * Bundles are scanned one by one on a single thread by default. The
+ * {@value #SCAN_THREADS_PROPERTY} framework property allows to scan bundles
+ * (and packages of large bundles) in parallel using a bounded work-stealing
+ * pool.
+ * <p>
+ * With the {@value #BYTECODE_SCAN_PROPERTY} framework property the class files
+ * are read without loading the classes and only the classes which may be
+ * handled by the servlet context initializers are loaded.
+ * <p>
+ * With the {@value #SCAN_CACHE_PROPERTY} framework property the scan results
+ * are persisted and reused for unchanged bundles after a restart.
+ * <p>
+ * A bundle which contains a class index generated at build time (see
+ * {@link BundleClassIndex#MANIFEST_HEADER}) is not scanned at all: the index
+ * is used instead.
+ * <p>
+ * Every scanned bundle causes a rerun of servlet context initializers. The
+ * {@value #COALESCE_WINDOW_PROPERTY} and {@value #AWAIT_FRAMEWORK_PROPERTY}
+ * framework properties allow to merge the results of bundles activated
+ * shortly one after another (e.g. a feature install) into one update.
+ * <p>
+ * With the {@value #EXTENDER_WIRING_PROPERTY} framework property extender
+ * bundles are detected by their package imports instead of the header.
+ * <p>
+ * An extender bundle may limit the scanned packages using
+ * <b>Vaadin-OSGi-Scan-Include</b> and <b>Vaadin-OSGi-Scan-Exclude</b>
+ * headers (see {@link PackageFilter}).
  * 
  * @author Vaadin Ltd
  * @since
  */
 public class VaadinBundleTracker extends BundleTracker<Bundle> {
 
+    /**
+     * Framework property which sets the number of threads used to scan
+     * extender bundles. Values greater than {@code 1} enable parallel
+     * scanning.
+     */
+    public static final String SCAN_THREADS_PROPERTY = "vaadin.osgi.scan.threads";
+
+    /**
+     * Framework property which enables reading of class files to load only
+     * the classes which may be handled by servlet context initializers.
+     */
+    public static final String BYTECODE_SCAN_PROPERTY = "vaadin.osgi.scan.bytecode";
+
+    /**
+     * Framework property which enables storing of bundle scan results in the
+     * private data area of the tracking bundle so that unchanged bundles are
+     * not scanned again after a restart.
+     */
+    public static final String SCAN_CACHE_PROPERTY = "vaadin.osgi.scan.cache";
+
+    /**
+     * Framework property which sets the time in milliseconds during which the
+     * scan results of activated bundles are collected and then reported at
+     * once. The window starts with the first result after the previous
+     * report, so a steady stream of bundle events delays the report by at
+     * most this time.
+     */
+    public static final String COALESCE_WINDOW_PROPERTY = "vaadin.osgi.scan.coalesce.window";
+
+    /**
+     * Framework property which enables holding back of scan results until the
+     * framework has been started (all the bundles of the initial start level
+     * are started).
+     */
+    public static final String AWAIT_FRAMEWORK_PROPERTY = "vaadin.osgi.scan.await.framework";
+
+    /**
+     * Framework property which enables detection of extender bundles by their
+     * wiring: a bundle is an extender if it imports some
+     * {@code com.vaadin.flow} packages. Bundles of Vaadin itself (with
+     * {@code com.vaadin.} symbolic name prefix) are still required to have
+     * the <b>Vaadin-OSGi-Extender</b> header.
+     */
+    public static final String EXTENDER_WIRING_PROPERTY = "vaadin.osgi.extender.wiring";
+
+    private static final String EXTENDER_HEADER = "Vaadin-OSGi-Extender";
+
+    private static final String FLOW_PACKAGE = "com.vaadin.flow";
+
+    private static final Pattern IMPORTED_PACKAGE = Pattern
+            .compile("\\(" + Pattern.quote(PackageNamespace.PACKAGE_NAMESPACE)
+                    + "=([^)]+)\\)");
+
+    private static final String SERVICES_DESCRIPTOR = "META-INF/services/"
+            + ServletContainerInitializer.class.getName();
+
+    /**
+     * The number of classes in a bundle starting from which the bundle
+     * packages are scanned in parallel.
+     */
+    private static final int PACKAGE_SPLIT_THRESHOLD = 500;
+
     private Bundle flowServerBundle;
 
-    private Executor executor = Executors.newSingleThreadExecutor();
+    private final ScheduledExecutorService executor = Executors
+            .newSingleThreadScheduledExecutor();
+
+    private final ForkJoinPool scanPool;
+
+    private final boolean bytecodeScan;
+
+    private final BundleScanCache scanCache;
 
     private final ServletContainerInitializerClasses initializerClasses;
 
+    private final Map<Long, Bundle> pendingBundles = new LinkedHashMap<>();
+
+    private final long coalesceWindow;
+
+    private final Map<Long, ScanResult> pendingClasses = new LinkedHashMap<>();
+
+    /**
+     * Scan generation per bundle id which is incremented once the bundle is
+     * stopped: it makes scans started before that stale.
+     */
+    private final Map<Long, Long> generations = new ConcurrentHashMap<>();
+
+    private final Map<Long, Future<?>> scans = new ConcurrentHashMap<>();
+
+    private final FrameworkListener frameworkListener;
+
+    private final BundleListener uninstallListener;
+
+    private volatile boolean frameworkStarted;
+
+    private final boolean extenderWiring;
+
+    /**
+     * Bundle classification per bundle revision: an updated bundle gets a new
+     * revision, the stale ones are collected once the bundle is refreshed.
+     */
+    private final Map<BundleRevision, Boolean> extenders = Collections
+            .synchronizedMap(new WeakHashMap<>());
+
     /**
      * Creates a new instance of a bundle tracker. OSGi ServiceComponentRuntime
      * injects the BundleContext because of the @Activate
@@ -60,6 +216,50 @@ public class VaadinBundleTracker extends BundleTracker<Bundle> {
             ServletContainerInitializerClasses initializerClasses) {
         super(context, Bundle.ACTIVE | Bundle.RESOLVED, null);
         this.initializerClasses = initializerClasses;
+        int threads = getScanThreads(context);
+        scanPool = threads > 1 ? new ForkJoinPool(threads) : null;
+        bytecodeScan = Boolean
+                .parseBoolean(context.getProperty(BYTECODE_SCAN_PROPERTY));
+        scanCache = Boolean
+                .parseBoolean(context.getProperty(SCAN_CACHE_PROPERTY))
+                        ? BundleScanCache.create(context).orElse(null)
+                        : null;
+        if (scanCache != null) {
+            // the tracker doesn't see uninstalled bundles: they are removed
+            // from the tracked ones once they are unresolved
+            uninstallListener = this::bundleUninstalled;
+            context.addBundleListener(uninstallListener);
+        } else {
+            uninstallListener = null;
+        }
+        coalesceWindow = getCoalesceWindow(context);
+        extenderWiring = Boolean
+                .parseBoolean(context.getProperty(EXTENDER_WIRING_PROPERTY));
+        if (Boolean.parseBoolean(context.getProperty(AWAIT_FRAMEWORK_PROPERTY))
+                && !isActive(context.getBundle(0))) {
+            frameworkListener = this::frameworkEvent;
+            context.addFrameworkListener(frameworkListener);
+            // the framework may have been started before the listener is added
+            frameworkStarted = isActive(context.getBundle(0));
+        } else {
+            frameworkListener = null;
+            frameworkStarted = true;
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (frameworkListener != null) {
+            context.removeFrameworkListener(frameworkListener);
+        }
+        if (uninstallListener != null) {
+            context.removeBundleListener(uninstallListener);
+        }
+        executor.shutdownNow();
+        if (scanPool != null) {
+            scanPool.shutdownNow();
+        }
     }
 
     @Override
@@ -68,8 +268,8 @@ public class VaadinBundleTracker extends BundleTracker<Bundle> {
             // Don't scan every individual bundle until flow-server is active
             if (isServerModule(bundle)) {
                 flowServerBundle = bundle;
-                // First: scan for servlet context initializers in flow-server
-                // bundle to reuse the same logic
+                // First: discover servlet context initializers in flow-server
+                // bundle (via services descriptor or by scanning the bundle)
                 executor.execute(this::scanContextInitializers);
                 // Now scan all active bundles for all classes instead of
                 // scanning every inidividual activated bundle/
@@ -78,58 +278,285 @@ public class VaadinBundleTracker extends BundleTracker<Bundle> {
                     && (flowServerBundle.getState() & Bundle.ACTIVE) != 0) {
                 // If flow-server bundle is already active then scan bundle for
                 // classes
-                executor.execute(() -> scanActivatedBundle(bundle));
+                scheduleScan(new ScanStamp(bundle));
             }
         } else if (event != null
                 && ((event.getType() & BundleEvent.STOPPED) > 0)
                 && isVaadinExtender(bundle)) {
             // Remove all bundle classes once the bundle becomes stopped
+            cancelScans(bundle.getBundleId());
             initializerClasses.removeScannedClasses(bundle.getBundleId());
         }
         return bundle;
     }
 
+    /**
+     * Schedules the scan of an activated bundle. The scan is tracked until it's
+     * completed so that it can be cancelled once the bundle is stopped.
+     */
+    private void scheduleScan(ScanStamp stamp) {
+        Long bundleId = stamp.bundle.getBundleId();
+        FutureTask<Void> scan = new FutureTask<>(
+                () -> scanActivatedBundle(stamp), null) {
+            @Override
+            protected void done() {
+                // don't remove the scan of a newer revision of the bundle
+                scans.remove(bundleId, this);
+            }
+        };
+        scans.put(bundleId, scan);
+        executor.execute(scan);
+    }
+
+    /**
+     * Makes all the scans of the bundle stale: queued scans are cancelled,
+     * running ones are aborted and results which are not reported yet are
+     * discarded.
+     */
+    private void cancelScans(Long bundleId) {
+        generations.merge(bundleId, 1L, Long::sum);
+        Future<?> scan = scans.remove(bundleId);
+        if (scan != null) {
+            // a running scan is not interrupted since it may be inside of
+            // the framework class loading, it checks the generation instead
+            scan.cancel(false);
+        }
+        synchronized (pendingBundles) {
+            pendingBundles.remove(bundleId);
+        }
+        synchronized (pendingClasses) {
+            pendingClasses.remove(bundleId);
+        }
+    }
+
+    /**
+     * Gets the number of scheduled scans of activated bundles which are not
+     * completed yet.
+     *
+     * @return the number of scheduled scans
+     */
+    int getScansCount() {
+        return scans.size();
+    }
+
+    private long getGeneration(Long bundleId) {
+        return generations.getOrDefault(bundleId, 0L);
+    }
+
     private boolean isServerModule(Bundle bundle) {
         return "com.vaadin.flow.server".equals(bundle.getSymbolicName());
     }
 
-    @SuppressWarnings("unchecked")
     private void scanContextInitializers() {
-        Map<Long, Collection<Class<?>>> map = new HashMap<>();
-        scanClasses(flowServerBundle, map, this::handleFlowServerClassError);
-        Collection<Class<?>> classes = map.get(flowServerBundle.getBundleId());
+        Collection<Class<? extends ServletContainerInitializer>> initializers = readServiceInitializers();
+        if (initializers.isEmpty()) {
+            initializers = scanInitializers();
+        }
+        initializerClasses.setServletContainerInitializers(initializers);
+    }
 
+    /**
+     * Reads servlet container initializers registered as services by
+     * flow-server: it allows to avoid loading all flow-server classes.
+     */
+    private Collection<Class<? extends ServletContainerInitializer>> readServiceInitializers() {
+        URL descriptor = flowServerBundle.getEntry(SERVICES_DESCRIPTOR);
+        if (descriptor == null) {
+            return Collections.emptyList();
+        }
+        List<String> classNames = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                descriptor.openStream(), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            while (line != null) {
+                int commentIndex = line.indexOf('#');
+                String className = (commentIndex < 0 ? line
+                        : line.substring(0, commentIndex)).trim();
+                if (!className.isEmpty()) {
+                    classNames.add(className);
+                }
+                line = reader.readLine();
+            }
+        } catch (IOException exception) {
+            LoggerFactory.getLogger(VaadinBundleTracker.class).debug(
+                    "Couldn't read '{}' in flow-server bundle, "
+                            + "the bundle is scanned for initializers",
+                    SERVICES_DESCRIPTOR, exception);
+            return Collections.emptyList();
+        }
+        return filterInitializers(loadClasses(new ScanStamp(flowServerBundle),
+                classNames, this::handleFlowServerClassError));
+    }
+
+    private Collection<Class<? extends ServletContainerInitializer>> scanInitializers() {
+        return filterInitializers(scan(() -> scanClasses(
+                new ScanStamp(flowServerBundle),
+                this::handleFlowServerClassError)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<Class<? extends ServletContainerInitializer>> filterInitializers(
+            Collection<Class<?>> classes) {
         Predicate<Class<?>> isInterface = Class::isInterface;
 
-        Collection<Class<? extends ServletContainerInitializer>> initializers = classes
-                .stream()
+        return classes.stream()
                 .filter(ServletContainerInitializer.class::isAssignableFrom)
                 .filter(isInterface.negate())
                 .map(clazz -> (Class<? extends ServletContainerInitializer>) clazz)
                 .collect(Collectors.toList());
-        initializerClasses.setServletContainerInitializers(initializers);
     }
 
-    private void scanActivatedBundle(Bundle bundle) {
-        if (!isActive(bundle) || !isVaadinExtender(bundle)) {
+    /**
+     * Gets the number of activated bundles which wait for the servlet context
+     * initializers discovery to be scanned.
+     * <p>
+     * The number is also logged at the debug level of this class logger
+     * whenever a bundle is parked and once the parked bundles are released.
+     *
+     * @return the number of pending bundles
+     */
+    public int getPendingBundlesCount() {
+        synchronized (pendingBundles) {
+            return pendingBundles.size();
+        }
+    }
+
+    private void scanActivatedBundle(ScanStamp stamp) {
+        Bundle bundle = stamp.bundle;
+        if (stamp.isCancelled() || !isActive(bundle)
+                || !isVaadinExtender(bundle)) {
             return;
         }
-        if (initializerClasses.hasInitializers()) {
-            Map<Long, Collection<Class<?>>> map = new HashMap<>();
-            scanClasses(bundle, map, this::handleBundleClassError);
-            initializerClasses.addScannedClasses(map);
-        } else {
-            executor.execute(() -> scanActivatedBundle(bundle));
+        synchronized (pendingBundles) {
+            if (!initializerClasses.hasInitializers()) {
+                // the bundle is scanned along with all active bundles once
+                // the initializers are discovered
+                pendingBundles.put(bundle.getBundleId(), bundle);
+                LoggerFactory.getLogger(VaadinBundleTracker.class).debug(
+                        "Bundle {} is pending until servlet context "
+                                + "initializers are discovered, {} pending bundles",
+                        bundle.getSymbolicName(), pendingBundles.size());
+                return;
+            }
         }
+        Map<Long, ScanResult> map = new HashMap<>();
+        map.put(bundle.getBundleId(), new ScanResult(stamp, scan(
+                () -> scanClasses(stamp, this::handleBundleClassError))));
+        reportScannedClasses(map);
     }
 
     private void scanActiveBundles() {
-        Map<Long, Collection<Class<?>>> map = new HashMap<>();
+        Map<Long, Bundle> bundles = new LinkedHashMap<>();
+        synchronized (pendingBundles) {
+            // release the bundles parked before the initializers discovery
+            bundles.putAll(pendingBundles);
+            pendingBundles.clear();
+        }
+        LoggerFactory.getLogger(VaadinBundleTracker.class).debug(
+                "Servlet context initializers are discovered, {} pending "
+                        + "bundles are released",
+                bundles.size());
         Stream.of(flowServerBundle.getBundleContext().getBundles())
+                .forEach(bundle -> bundles.put(bundle.getBundleId(), bundle));
+        List<Bundle> activeBundles = bundles.values().stream()
                 .filter(this::isActive).filter(this::isVaadinExtender)
-                .forEach(activeBundle -> scanClasses(activeBundle, map,
-                        this::handleBundleClassError));
+                .collect(Collectors.toList());
+        // all the bundles are scanned (in parallel if it's enabled) and then
+        // their classes are reported at once
+        Map<Long, ScanResult> map = scan(() -> parallel(activeBundles.stream())
+                .map(ScanStamp::new)
+                .collect(Collectors.toMap(stamp -> stamp.bundle.getBundleId(),
+                        stamp -> new ScanResult(stamp, scanClasses(stamp,
+                                this::handleBundleClassError)))));
+        reportScannedClasses(map);
+    }
+
+    /**
+     * Reports the scanned classes immediately or collects them to be reported
+     * along with other scan results at the end of the coalescing window or
+     * once the framework is started.
+     */
+    private void reportScannedClasses(Map<Long, ScanResult> map) {
+        if (coalesceWindow <= 0 && frameworkStarted) {
+            addScannedClasses(map);
+            return;
+        }
+        synchronized (pendingClasses) {
+            boolean schedule = pendingClasses.isEmpty();
+            pendingClasses.putAll(map);
+            if (!schedule || !frameworkStarted) {
+                // either the flush is already scheduled or it will be
+                // done on the framework start
+                return;
+            }
+        }
+        executor.schedule(this::flushScannedClasses, coalesceWindow,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void flushScannedClasses() {
+        Map<Long, ScanResult> map;
+        synchronized (pendingClasses) {
+            if (pendingClasses.isEmpty()) {
+                return;
+            }
+            map = new HashMap<>(pendingClasses);
+            pendingClasses.clear();
+        }
+        LoggerFactory.getLogger(VaadinBundleTracker.class).debug(
+                "Report scanned classes of {} bundles at once", map.size());
+        addScannedClasses(map);
+    }
+
+    /**
+     * Reports the classes of the scans which are not stale.
+     */
+    private void addScannedClasses(Map<Long, ScanResult> results) {
+        Map<Long, Collection<Class<?>>> map = new HashMap<>();
+        results.forEach((bundleId, result) -> {
+            if (result.stamp.isCurrent()) {
+                map.put(bundleId, result.classes);
+            }
+        });
+        if (map.isEmpty()) {
+            return;
+        }
         initializerClasses.addScannedClasses(map);
+        // A bundle may have been stopped concurrently: its generation is
+        // incremented before the classes are removed, so either the removal
+        // happens after the classes are added or it's done here
+        map.keySet().stream()
+                .filter(bundleId -> results.get(bundleId).stamp.isCancelled())
+                .forEach(initializerClasses::removeScannedClasses);
+    }
+
+    private void frameworkEvent(FrameworkEvent event) {
+        if (event.getType() == FrameworkEvent.STARTED && !frameworkStarted) {
+            frameworkStarted = true;
+            executor.execute(this::flushScannedClasses);
+        }
+    }
+
+    private void bundleUninstalled(BundleEvent event) {
+        if (event.getType() == BundleEvent.UNINSTALLED) {
+            scanCache.remove(event.getBundle());
+        }
+    }
+
+    /**
+     * Runs the {@code scanner} in the parallel scan pool if it's enabled
+     * (which makes parallel streams used inside the scanner to be executed in
+     * the pool) or in the calling thread otherwise.
+     */
+    private <T> T scan(Supplier<T> scanner) {
+        if (scanPool == null) {
+            return scanner.get();
+        }
+        return scanPool.submit(scanner::get).join();
+    }
+
+    private <T> Stream<T> parallel(Stream<T> stream) {
+        return scanPool == null ? stream : stream.parallel();
     }
 
     private boolean isActive(Bundle bundle) {
@@ -137,8 +564,43 @@ public class VaadinBundleTracker extends BundleTracker<Bundle> {
     }
 
     private boolean isVaadinExtender(Bundle bundle) {
-        return !isServerModule(bundle) && Boolean.TRUE.toString()
-                .equals(bundle.getHeaders().get("Vaadin-OSGi-Extender"));
+        if (isServerModule(bundle)) {
+            return false;
+        }
+        BundleRevision revision = bundle.adapt(BundleRevision.class);
+        if (revision == null) {
+            // uninstalled bundle
+            return false;
+        }
+        Boolean extender = extenders.get(revision);
+        if (extender == null) {
+            if (extenderWiring && revision.getWiring() == null) {
+                // not resolved yet: don't cache the result
+                return false;
+            }
+            extender = extenderWiring ? isWiredExtender(bundle, revision)
+                    : hasExtenderHeader(bundle);
+            extenders.put(revision, extender);
+        }
+        return extender;
+    }
+
+    private boolean isWiredExtender(Bundle bundle, BundleRevision revision) {
+        String symbolicName = bundle.getSymbolicName();
+        if (symbolicName != null && symbolicName.startsWith("com.vaadin.")) {
+            return hasExtenderHeader(bundle);
+        }
+        return revision.getWiring()
+                .getRequiredWires(PackageNamespace.PACKAGE_NAMESPACE).stream()
+                .map(wire -> wire.getCapability().getAttributes()
+                        .get(PackageNamespace.PACKAGE_NAMESPACE))
+                .anyMatch(pkg -> FLOW_PACKAGE.equals(pkg) || String
+                        .valueOf(pkg).startsWith(FLOW_PACKAGE + '.'));
+    }
+
+    private boolean hasExtenderHeader(Bundle bundle) {
+        return Boolean.TRUE.toString()
+                .equals(bundle.getHeaders().get(EXTENDER_HEADER));
     }
 
     private void handleFlowServerClassError(String className,
@@ -148,27 +610,239 @@ public class VaadinBundleTracker extends BundleTracker<Bundle> {
     }
 
     private void handleBundleClassError(String className, Throwable throwable) {
+        // failures are reported per bundle, see logLoadFailures
         LoggerFactory.getLogger(VaadinBundleTracker.class)
-                .warn("Couldn't load class '{}'", className, throwable);
+                .debug("Couldn't load class '{}'", className, throwable);
     }
 
-    private void scanClasses(Bundle bundle, Map<Long, Collection<Class<?>>> map,
+    private Collection<Class<?>> scanClasses(ScanStamp stamp,
             BiConsumer<String, Throwable> throwableHandler) {
-        BundleWiring wiring = bundle.adapt(BundleWiring.class);
+        Bundle bundle = stamp.bundle;
+        PackageFilter filter = PackageFilter.of(bundle);
+        BundleClassIndex index = getClassIndex(bundle, filter);
+        // the index may be created without the filter (embedded index)
+        List<String> classNames = filter.filter(index.getClassNames());
+
+        if (!bundle.equals(flowServerBundle)
+                && (bytecodeScan || index.isFullyDescribed())) {
+            Optional<Set<Class<?>>> handledTypes = initializerClasses
+                    .getHandledTypes();
+            if (handledTypes.isPresent()) {
+                classNames = selectHandledClasses(bundle, index, classNames,
+                        handledTypes.get());
+            }
+        }
+        if (bundle.equals(flowServerBundle)) {
+            return loadClasses(stamp, classNames, throwableHandler);
+        }
+
+        classNames = skipUnresolvableClasses(bundle, index, classNames);
+        List<String> failures = Collections
+                .synchronizedList(new ArrayList<>());
+        BiConsumer<String, Throwable> handler = (className, throwable) -> {
+            failures.add(className);
+            throwableHandler.accept(className, throwable);
+        };
+        Collection<Class<?>> classes;
+        if (scanPool == null || classNames.size() < PACKAGE_SPLIT_THRESHOLD) {
+            classes = loadClasses(stamp, classNames, handler);
+        } else {
+            // Large bundle: load classes of every package as a separate task
+            classes = classNames.stream()
+                    .collect(Collectors
+                            .groupingBy(VaadinBundleTracker::getPackageName))
+                    .values().parallelStream()
+                    .map(packageClasses -> loadClasses(stamp, packageClasses,
+                            handler))
+                    .flatMap(Collection::stream).collect(Collectors.toList());
+        }
+        if (!failures.isEmpty() && !stamp.isCancelled()) {
+            logLoadFailures(bundle, failures);
+        }
+        return classes;
+    }
+
+    private void logLoadFailures(Bundle bundle, List<String> failures) {
+        List<String> sorted = new ArrayList<>(failures);
+        Collections.sort(sorted);
+        String classes = sorted.stream().limit(10)
+                .collect(Collectors.joining(", "));
+        if (sorted.size() > 10) {
+            classes += ", ...";
+        }
+        LoggerFactory.getLogger(VaadinBundleTracker.class).warn(
+                "{} classes of the bundle {} couldn't be loaded and are "
+                        + "ignored: {}. Enable debug logging for details.",
+                sorted.size(), bundle.getSymbolicName(), classes);
+    }
+
+    /**
+     * Skips the classes which can't be loaded because their supertypes belong
+     * to the packages of optional imports which are not wired: loading of
+     * such classes fails anyway.
+     */
+    private List<String> skipUnresolvableClasses(Bundle bundle,
+            BundleClassIndex index, List<String> classNames) {
+        Set<String> unwiredPackages = getUnwiredPackages(bundle);
+        if (unwiredPackages.isEmpty()) {
+            return classNames;
+        }
+        Set<String> bundleClasses = new HashSet<>(index.getClassNames());
+        Map<String, Boolean> resolvable = new HashMap<>();
+        List<String> result = new ArrayList<>(classNames.size());
+        for (String className : classNames) {
+            if (isResolvable(bundle, index, className, unwiredPackages,
+                    bundleClasses, resolvable)) {
+                result.add(className);
+            }
+        }
+        if (result.size() < classNames.size()) {
+            LoggerFactory.getLogger(VaadinBundleTracker.class).debug(
+                    "{} classes of the bundle {} are skipped because they "
+                            + "depend on packages of unwired optional imports {}",
+                    classNames.size() - result.size(),
+                    bundle.getSymbolicName(), unwiredPackages);
+        }
+        return result;
+    }
+
+    private boolean isResolvable(Bundle bundle, BundleClassIndex index,
+            String className, Set<String> unwiredPackages,
+            Set<String> bundleClasses, Map<String, Boolean> resolvable) {
+        if (unwiredPackages.contains(getPackageName(className))) {
+            return false;
+        }
+        if (!bundleClasses.contains(className)) {
+            // a class of a wired package
+            return true;
+        }
+        Boolean known = resolvable.get(className);
+        if (known != null) {
+            return known;
+        }
+        // guards against cycles in (invalid) class hierarchies
+        resolvable.put(className, Boolean.TRUE);
+        Optional<ClassDescriptor> descriptor = index.getDescriptor(className)
+                .or(() -> readDescriptor(bundle, className));
+        boolean result = descriptor.map(
+                desc -> Stream
+                        .concat(Stream.of(desc.getSuperName()),
+                                desc.getInterfaces().stream())
+                        .filter(Objects::nonNull)
+                        .allMatch(type -> isResolvable(bundle, index, type,
+                                unwiredPackages, bundleClasses, resolvable)))
+                .orElse(true);
+        resolvable.put(className, result);
+        return result;
+    }
+
+    private Set<String> getUnwiredPackages(Bundle bundle) {
+        BundleRevision revision = bundle.adapt(BundleRevision.class);
+        BundleWiring wiring = revision == null ? null : revision.getWiring();
+        if (wiring == null) {
+            return Collections.emptySet();
+        }
+        Set<Object> wiredPackages = wiring
+                .getRequiredWires(PackageNamespace.PACKAGE_NAMESPACE).stream()
+                .map(wire -> wire.getCapability().getAttributes()
+                        .get(PackageNamespace.PACKAGE_NAMESPACE))
+                .collect(Collectors.toSet());
+        Set<String> result = new HashSet<>();
+        for (BundleRequirement requirement : revision
+                .getDeclaredRequirements(PackageNamespace.PACKAGE_NAMESPACE)) {
+            if (!PackageNamespace.RESOLUTION_OPTIONAL
+                    .equals(requirement.getDirectives().get(
+                            PackageNamespace.REQUIREMENT_RESOLUTION_DIRECTIVE))) {
+                continue;
+            }
+            String filter = requirement.getDirectives()
+                    .get(PackageNamespace.REQUIREMENT_FILTER_DIRECTIVE);
+            Matcher matcher = filter == null ? null
+                    : IMPORTED_PACKAGE.matcher(filter);
+            if (matcher != null && matcher.find()
+                    && !wiredPackages.contains(matcher.group(1))) {
+                result.add(matcher.group(1));
+            }
+        }
+        return result;
+    }
+
+    private BundleClassIndex getClassIndex(Bundle bundle,
+            PackageFilter filter) {
+        Optional<BundleClassIndex> embedded = getEmbeddedClassIndex(bundle);
+        if (embedded.isPresent()) {
+            return embedded.get();
+        }
+        if (scanCache != null) {
+            Optional<BundleClassIndex> cached = scanCache.read(bundle);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+        }
+        // the cached index depends on the filter headers, they are a part of
+        // the manifest which is verified by the cache
+        BundleClassIndex index = createClassIndex(bundle, filter);
+        if (scanCache != null) {
+            scanCache.write(bundle, index);
+        }
+        return index;
+    }
 
-        // get all .class resources of this bundle
-        Collection<String> classes = wiring.listResources("/", "*.class",
-                /*
-                 * Two options: recursive to visit all resources including
-                 * sub-directories, and limit resources only to the current
-                 * wiring (bundle) avoiding possibly returned classes from
-                 * dependencies
-                 */
-                BundleWiring.LISTRESOURCES_RECURSE
-                        | BundleWiring.LISTRESOURCES_LOCAL);
+    private Optional<BundleClassIndex> getEmbeddedClassIndex(Bundle bundle) {
+        String location = bundle.getHeaders()
+                .get(BundleClassIndex.MANIFEST_HEADER);
+        if (location == null) {
+            return Optional.empty();
+        }
+        URL url = bundle.getEntry(location.trim());
+        if (url == null) {
+            LoggerFactory.getLogger(VaadinBundleTracker.class).warn(
+                    "Class index '{}' declared by the bundle {} is not found. "
+                            + "The bundle is scanned for classes instead.",
+                    location, bundle.getSymbolicName());
+            return Optional.empty();
+        }
+        try (InputStream stream = url.openStream()) {
+            BundleClassIndex index = BundleClassIndex.read(stream);
+            // the version is not compared: bnd normalizes Bundle-Version
+            // (e.g. a SNAPSHOT qualifier) after the index is generated
+            if (Objects.equals(bundle.getSymbolicName(), index
+                    .getProperty(BundleClassIndex.SYMBOLIC_NAME_PROPERTY))) {
+                return Optional.of(index);
+            }
+            LoggerFactory.getLogger(VaadinBundleTracker.class).warn(
+                    "Class index '{}' of the bundle {} is generated for "
+                            + "another bundle. "
+                            + "The bundle is scanned for classes instead.",
+                    location, bundle.getSymbolicName());
+        } catch (IOException exception) {
+            LoggerFactory.getLogger(VaadinBundleTracker.class).warn(
+                    "Couldn't read class index '{}' of the bundle {}. "
+                            + "The bundle is scanned for classes instead.",
+                    location, bundle.getSymbolicName(), exception);
+        }
+        return Optional.empty();
+    }
+
+    private BundleClassIndex createClassIndex(Bundle bundle,
+            PackageFilter filter) {
+        BundleWiring wiring = bundle.adapt(BundleWiring.class);
 
-        Collection<Class<?>> bundleClasses = new ArrayList<>();
+        // get all .class resources of this bundle in the included packages
+        Collection<String> classes = new LinkedHashSet<>();
+        for (String root : filter.getRoots()) {
+            classes.addAll(wiring.listResources(root, "*.class",
+                    /*
+                     * Two options: recursive to visit all resources including
+                     * sub-directories, and limit resources only to the
+                     * current wiring (bundle) avoiding possibly returned
+                     * classes from dependencies
+                     */
+                    BundleWiring.LISTRESOURCES_RECURSE
+                            | BundleWiring.LISTRESOURCES_LOCAL));
+        }
 
+        List<String> classNames = new ArrayList<>(classes.size());
         for (String clazz : classes) {
             String className = clazz.replaceAll("\\.class$", "").replace('/',
                     '.');
@@ -180,13 +854,176 @@ public class VaadinBundleTracker extends BundleTracker<Bundle> {
                 // New modular Java info class which we are not interested in
                 continue;
             }
+            if (!filter.accept(className)) {
+                continue;
+            }
+            classNames.add(className);
+        }
+
+        List<ClassDescriptor> descriptors = Collections.emptyList();
+        if (isBytecodeScanned(bundle)) {
+            descriptors = parallel(classNames.stream())
+                    .map(className -> readDescriptor(bundle, className))
+                    .filter(Optional::isPresent).map(Optional::get)
+                    .collect(Collectors.toList());
+        }
+        return new BundleClassIndex(classNames, descriptors);
+    }
+
+    private boolean isBytecodeScanned(Bundle bundle) {
+        return bytecodeScan && !bundle.equals(flowServerBundle);
+    }
+
+    private List<String> selectHandledClasses(Bundle bundle,
+            BundleClassIndex index, List<String> classNames,
+            Set<Class<?>> handledTypes) {
+        // a class which can't be read is loaded to check it as before
+        List<String> result = new ArrayList<>();
+        Map<String, ClassDescriptor> descriptors = new HashMap<>();
+        for (String className : classNames) {
+            Optional<ClassDescriptor> descriptor = index
+                    .getDescriptor(className)
+                    .or(() -> readDescriptor(bundle, className));
+            if (descriptor.isPresent()) {
+                descriptors.put(className, descriptor.get());
+            } else {
+                result.add(className);
+            }
+        }
+
+        Map<String, Optional<Class<?>>> externalClasses = new HashMap<>();
+        result.addAll(new HandledTypesFilter(handledTypes).select(descriptors,
+                className -> externalClasses
+                        .computeIfAbsent(className,
+                                name -> loadExternalClass(bundle, name))
+                        .orElse(null)));
+        return result;
+    }
+
+    private Optional<ClassDescriptor> readDescriptor(Bundle bundle,
+            String className) {
+        String path = className.replace('.', '/') + ".class";
+        URL url = bundle.getEntry(path);
+        if (url == null) {
+            // the class is inside an embedded jar on the bundle class path
+            url = bundle.getResource(path);
+        }
+        if (url == null) {
+            return Optional.empty();
+        }
+        try (InputStream stream = new BufferedInputStream(url.openStream())) {
+            return Optional.of(ClassFileReader.read(stream));
+        } catch (IOException exception) {
+            LoggerFactory.getLogger(VaadinBundleTracker.class).debug(
+                    "Couldn't read class file of '{}'", className, exception);
+            return Optional.empty();
+        }
+    }
+
+    private Optional<Class<?>> loadExternalClass(Bundle bundle,
+            String className) {
+        try {
+            return Optional.of(bundle.loadClass(className));
+        } catch (ClassNotFoundException | NoClassDefFoundError exception) {
+            return Optional.empty();
+        }
+    }
+
+    private Collection<Class<?>> loadClasses(ScanStamp stamp,
+            Collection<String> classNames,
+            BiConsumer<String, Throwable> throwableHandler) {
+        Collection<Class<?>> bundleClasses = new ArrayList<>(
+                classNames.size());
+        for (String className : classNames) {
+            if (stamp.isCancelled()) {
+                // the result is discarded anyway
+                break;
+            }
             try {
-                bundleClasses.add(bundle.loadClass(className));
+                bundleClasses.add(stamp.bundle.loadClass(className));
             } catch (ClassNotFoundException | NoClassDefFoundError exception) {
                 throwableHandler.accept(className, exception);
             }
         }
-        map.put(bundle.getBundleId(), bundleClasses);
+        return bundleClasses;
+    }
+
+    /**
+     * Identifies a scan of a bundle revision. The scan becomes stale once the
+     * bundle is stopped or updated.
+     */
+    private final class ScanStamp {
+
+        private final Bundle bundle;
+
+        private final BundleRevision revision;
+
+        private final long generation;
+
+        private ScanStamp(Bundle bundle) {
+            this.bundle = bundle;
+            revision = bundle.adapt(BundleRevision.class);
+            generation = getGeneration(bundle.getBundleId());
+        }
+
+        private boolean isCancelled() {
+            return generation != getGeneration(bundle.getBundleId());
+        }
+
+        private boolean isCurrent() {
+            return !isCancelled() && isActive(bundle)
+                    && Objects.equals(revision,
+                            bundle.adapt(BundleRevision.class));
+        }
+    }
+
+    private static final class ScanResult {
+
+        private final ScanStamp stamp;
+
+        private final Collection<Class<?>> classes;
+
+        private ScanResult(ScanStamp stamp, Collection<Class<?>> classes) {
+            this.stamp = stamp;
+            this.classes = classes;
+        }
+    }
+
+    private static String getPackageName(String className) {
+        int index = className.lastIndexOf('.');
+        return index < 0 ? "" : className.substring(0, index);
+    }
+
+    private static long getCoalesceWindow(BundleContext context) {
+        String window = context.getProperty(COALESCE_WINDOW_PROPERTY);
+        if (window == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(window.trim());
+        } catch (NumberFormatException exception) {
+            LoggerFactory.getLogger(VaadinBundleTracker.class).warn(
+                    "Invalid value '{}' of the '{}' property, "
+                            + "scan results are reported immediately",
+                    window, COALESCE_WINDOW_PROPERTY);
+            return 0;
+        }
+    }
+
+    private static int getScanThreads(BundleContext context) {
+        String threads = context.getProperty(SCAN_THREADS_PROPERTY);
+        if (threads == null) {
+            return 1;
+        }
+        try {
+            return Integer.parseInt(threads.trim());
+        } catch (NumberFormatException exception) {
+            LoggerFactory.getLogger(VaadinBundleTracker.class).warn(
+                    "Invalid value '{}' of the '{}' property, "
+                            + "bundles are scanned in one thread",
+                    threads, SCAN_THREADS_PROPERTY);
+            return 1;
+        }
     }
 
 }
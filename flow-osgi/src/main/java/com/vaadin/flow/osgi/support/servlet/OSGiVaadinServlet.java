@@ -14,9 +14,13 @@ import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -24,8 +28,10 @@ import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
 import org.osgi.util.tracker.ServiceTracker;
+import org.slf4j.LoggerFactory;
 
 import com.vaadin.flow.di.Lookup;
+import com.vaadin.flow.osgi.support.ContextInitialization;
 import com.vaadin.flow.osgi.support.OSGiVaadinInitialization;
 import com.vaadin.flow.server.VaadinServlet;
 import com.vaadin.flow.server.VaadinServletContext;
@@ -49,6 +55,12 @@ import com.vaadin.flow.server.VaadinServletContext;
  */
 public class OSGiVaadinServlet extends VaadinServlet {
 
+    /**
+     * Time in seconds during which a request waits for the asynchronous
+     * context initialization.
+     */
+    private static final long INIT_TIMEOUT = 60;
+
     private static class OSGiInitializationTracker extends
             ServiceTracker<OSGiVaadinInitialization, OSGiVaadinInitialization> {
 
@@ -83,6 +95,41 @@ public class OSGiVaadinServlet extends VaadinServlet {
         tracker.open();
     }
 
+    @Override
+    protected void service(HttpServletRequest request,
+            HttpServletResponse response) throws ServletException, IOException {
+        ContextInitialization initialization = new VaadinServletContext(
+                getServletContext()).getAttribute(ContextInitialization.class);
+        if (initialization != null && !isInitialized(initialization)) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        super.service(request, response);
+    }
+
+    private boolean isInitialized(ContextInitialization initialization) {
+        if (!initialization.isDone() && !awaitInitialization(initialization)) {
+            return false;
+        }
+        // the failure is logged by the initialization itself: requests are
+        // not handled by the uninitialized context
+        return !initialization.isFailed();
+    }
+
+    private boolean awaitInitialization(ContextInitialization initialization) {
+        try {
+            if (initialization.await(INIT_TIMEOUT, TimeUnit.SECONDS)) {
+                return true;
+            }
+            LoggerFactory.getLogger(OSGiVaadinServlet.class).warn(
+                    "Vaadin context is not initialized in {} seconds",
+                    INIT_TIMEOUT);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
     @Override
     public void destroy() {
         ServletContext servletContext = getServletContext();
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BundleClassIndexTest {
+
+    @Test
+    public void writeAndRead_indexIsRestored() throws IOException {
+        ClassDescriptor view = new ClassDescriptor("com.example.View",
+                "com.vaadin.flow.component.html.Div",
+                Arrays.asList("com.example.HasTitle", "java.io.Serializable"),
+                new HashSet<>(Arrays.asList("com.vaadin.flow.router.Route",
+                        "com.vaadin.flow.router.PageTitle")));
+        ClassDescriptor object = new ClassDescriptor("com.example.Root", null,
+                Collections.emptyList(), Collections.emptySet());
+        BundleClassIndex index = new BundleClassIndex(
+                Arrays.asList("com.example.View", "com.example.Root",
+                        "com.example.Unread"),
+                Arrays.asList(view, object));
+        index.setProperty("key", "value=with=equals");
+
+        BundleClassIndex restored = writeAndRead(index);
+
+        Assert.assertEquals(index.getClassNames(), restored.getClassNames());
+        Assert.assertEquals("value=with=equals", restored.getProperty("key"));
+
+        ClassDescriptor restoredView = restored
+                .getDescriptor("com.example.View").get();
+        Assert.assertEquals(view.getSuperName(), restoredView.getSuperName());
+        Assert.assertEquals(view.getInterfaces(),
+                restoredView.getInterfaces());
+        Assert.assertEquals(view.getAnnotations(),
+                restoredView.getAnnotations());
+
+        ClassDescriptor restoredRoot = restored
+                .getDescriptor("com.example.Root").get();
+        Assert.assertNull(restoredRoot.getSuperName());
+        Assert.assertTrue(restoredRoot.getInterfaces().isEmpty());
+        Assert.assertTrue(restoredRoot.getAnnotations().isEmpty());
+
+        Assert.assertFalse(
+                restored.getDescriptor("com.example.Unread").isPresent());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_unknownFormat_throws() throws IOException {
+        BundleClassIndex.read(new ByteArrayInputStream(
+                "com.example.View\n".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private BundleClassIndex writeAndRead(BundleClassIndex index)
+            throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        index.write(stream);
+        return BundleClassIndex
+                .read(new ByteArrayInputStream(stream.toByteArray()));
+    }
+}
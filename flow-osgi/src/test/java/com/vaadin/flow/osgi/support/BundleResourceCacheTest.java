@@ -0,0 +1,358 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+
+import com.vaadin.flow.osgi.support.BundleResourceCache.Encoding;
+
+public class BundleResourceCacheTest {
+
+    private final BundleResourceCache cache = new BundleResourceCache();
+
+    private final Bundle bundle = Mockito.mock(Bundle.class);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws IOException {
+        BundleContext context = Mockito.mock(BundleContext.class);
+        Mockito.when(context.getProperty(BundleResourceCache.SIZE_PROPERTY))
+                .thenReturn("16");
+        cache.activate(context);
+
+        Mockito.when(bundle.getBundleId()).thenReturn(3L);
+        Mockito.when(bundle.getLastModified()).thenReturn(100L);
+        for (String name : new String[] { "a", "b", "c", "d", "e" }) {
+            addResource(name, "1234");
+        }
+        addResource("big", "12345");
+        addResource("b.br", "br");
+    }
+
+    @Test
+    public void getResource_sameResource_readOnce() throws IOException {
+        Optional<BundleResourceCache.Resource> first = cache
+                .getResource(bundle, "/a");
+        Optional<BundleResourceCache.Resource> second = cache
+                .getResource(bundle, "a");
+
+        Assert.assertEquals("1234", read(first.get()));
+        Assert.assertSame(first.get(), second.get());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(4, cache.getSize());
+    }
+
+    @Test
+    public void getResource_noResource_emptyResult() throws IOException {
+        Assert.assertFalse(cache.getResource(bundle, "missing").isPresent());
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void getResource_capacityExceeded_leastRecentlyUsedIsEvicted()
+            throws IOException {
+        for (String name : new String[] { "a", "b", "c", "d" }) {
+            cache.getResource(bundle, name);
+        }
+        cache.getResource(bundle, "a");
+        cache.getResource(bundle, "e");
+
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertEquals(16, cache.getSize());
+        cache.getResource(bundle, "a");
+        Assert.assertEquals(5, cache.getMissCount());
+        cache.getResource(bundle, "b");
+        Assert.assertEquals(6, cache.getMissCount());
+    }
+
+    @Test
+    public void getResource_tooBigResource_notCached() throws IOException {
+        Optional<BundleResourceCache.Resource> resource = cache
+                .getResource(bundle, "big");
+
+        Assert.assertEquals("12345", read(resource.get()));
+        Assert.assertEquals(5, resource.get().getLength());
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void bundleUpdated_resourcesAreDropped() throws IOException {
+        cache.getResource(bundle, "a");
+
+        cache.bundleChanged(new BundleEvent(BundleEvent.UPDATED, bundle));
+
+        Assert.assertEquals(0, cache.getSize());
+        cache.getResource(bundle, "a");
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void getURL_cachedResource_servedFromMemory() throws Exception {
+        BundleResourceCache.Resource resource = cache
+                .getResource(bundle, "a").get();
+        new File(bundle.getResource("a").toURI()).delete();
+
+        try (InputStream stream = resource.getURL().openStream()) {
+            Assert.assertEquals("1234",
+                    IOUtils.toString(stream, StandardCharsets.UTF_8));
+        }
+        Assert.assertEquals(4,
+                resource.getURL().openConnection().getContentLengthLong());
+    }
+
+    @Test
+    public void getEncodedResource_precompressedSibling_siblingIsUsed()
+            throws IOException {
+        Optional<BundleResourceCache.Resource> resource = cache
+                .getEncodedResource(bundle, "b", Encoding.BROTLI, true);
+
+        Assert.assertEquals("br", read(resource.get()));
+    }
+
+    @Test
+    public void getEncodedResource_noSibling_gzipIsCompressedOnce()
+            throws IOException {
+        BundleContext context = Mockito.mock(BundleContext.class);
+        Mockito.when(context.getProperty(BundleResourceCache.SIZE_PROPERTY))
+                .thenReturn("1024");
+        BundleResourceCache cache = new BundleResourceCache();
+        cache.activate(context);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            text.append("1234");
+        }
+        addResource("text", text.toString());
+
+        Optional<BundleResourceCache.Resource> resource = cache
+                .getEncodedResource(bundle, "text", Encoding.GZIP, true);
+        Optional<BundleResourceCache.Resource> cached = cache
+                .getEncodedResource(bundle, "text", Encoding.GZIP, true);
+
+        Assert.assertSame(resource.get(), cached.get());
+        try (InputStream stream = new GZIPInputStream(
+                resource.get().openStream())) {
+            Assert.assertEquals(text.toString(),
+                    IOUtils.toString(stream, StandardCharsets.UTF_8));
+        }
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertFalse(cache
+                .getEncodedResource(bundle, "text", Encoding.BROTLI, true)
+                .isPresent());
+        Assert.assertFalse(cache
+                .getEncodedResource(bundle, "a", Encoding.GZIP, true)
+                .isPresent());
+    }
+
+    @Test
+    public void getResource_extractMode_bigResourceIsExtractedOnce()
+            throws IOException {
+        File dataArea = temporaryFolder.newFolder();
+        BundleContext context = Mockito.mock(BundleContext.class);
+        Mockito.when(context.getProperty(BundleResourceCache.SIZE_PROPERTY))
+                .thenReturn("16");
+        Mockito.when(context.getProperty(BundleResourceCache.EXTRACT_PROPERTY))
+                .thenReturn(Boolean.TRUE.toString());
+        Mockito.when(context.getDataFile("resources"))
+                .thenReturn(new File(dataArea, "resources"));
+        BundleResourceCache cache = new BundleResourceCache();
+        cache.activate(context);
+
+        BundleResourceCache.Resource resource = cache
+                .getResource(bundle, "/big").get();
+        Assert.assertSame(resource, cache.getResource(bundle, "big").get());
+        Assert.assertEquals("file", resource.getURL().getProtocol());
+        Assert.assertEquals(0, cache.getSize());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        resource.write(out, 1, 3);
+        Assert.assertEquals("234",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+        cache.bundleChanged(new BundleEvent(BundleEvent.UNRESOLVED, bundle));
+        Assert.assertFalse(new File(dataArea, "resources/3").exists());
+    }
+
+    @Test
+    public void write_cachedAndStreamedResources_partIsWritten()
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.getResource(bundle, "a").get().write(out, 2, 2);
+        cache.getResource(bundle, "big").get().write(out, 3, 2);
+
+        Assert.assertEquals("3445",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void getResource_streamedResource_connectionStreamIsClosed()
+            throws IOException {
+        AtomicInteger openStreams = addBundleEntry("entry", "12345");
+
+        Optional<BundleResourceCache.Resource> resource = cache
+                .getResource(bundle, "entry");
+
+        Assert.assertEquals(5, resource.get().getLength());
+        Assert.assertEquals(0, openStreams.get());
+    }
+
+    @Test
+    public void peekResource_notCachedResource_contentIsNotRead()
+            throws IOException {
+        AtomicInteger openStreams = addBundleEntry("entry", "123");
+
+        Optional<BundleResourceCache.Resource> resource = cache
+                .peekResource(bundle, "entry");
+
+        Assert.assertEquals(3, resource.get().getLength());
+        Assert.assertNull(resource.get().getContent());
+        Assert.assertEquals(0, openStreams.get());
+        Assert.assertEquals(0, cache.getMissCount());
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertFalse(cache.peekResource(bundle, "missing").isPresent());
+    }
+
+    @Test
+    public void containsResource_notCachedResource_resourceIsNotOpened()
+            throws IOException {
+        URL url = new URL("bundle", "3.0", -1, "/entry",
+                new URLStreamHandler() {
+                    @Override
+                    protected URLConnection openConnection(URL u)
+                            throws IOException {
+                        throw new IOException("The entry is opened");
+                    }
+                });
+        Mockito.when(bundle.getResource("entry")).thenReturn(url);
+
+        Assert.assertTrue(cache.containsResource(bundle, "entry"));
+        Assert.assertFalse(cache.containsResource(bundle, "missing"));
+        Assert.assertEquals(0, cache.getMissCount());
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void containsResource_cachedResource_cachedResourceIsUsed()
+            throws IOException {
+        cache.getResource(bundle, "a");
+        Mockito.when(bundle.getResource("a")).thenReturn(null);
+
+        Assert.assertTrue(cache.containsResource(bundle, "a"));
+        Assert.assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void peekResource_cachedResource_cachedResourceIsUsed()
+            throws IOException {
+        BundleResourceCache.Resource resource = cache.getResource(bundle, "a")
+                .get();
+
+        Assert.assertSame(resource, cache.peekResource(bundle, "a").get());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertTrue(cache
+                .peekEncodedResource(bundle, "b", Encoding.BROTLI)
+                .isPresent());
+        Assert.assertFalse(cache
+                .peekEncodedResource(bundle, "a", Encoding.GZIP)
+                .isPresent());
+    }
+
+    /**
+     * Adds a resource whose connection opens the content stream once
+     * connected, the same way bundle URL connections do it.
+     */
+    private AtomicInteger addBundleEntry(String name, String content)
+            throws IOException {
+        AtomicInteger openStreams = new AtomicInteger();
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        URLStreamHandler handler = new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL url) {
+                return new URLConnection(url) {
+
+                    private InputStream stream;
+
+                    @Override
+                    public void connect() {
+                        if (!connected) {
+                            openStreams.incrementAndGet();
+                            stream = new FilterInputStream(
+                                    new ByteArrayInputStream(bytes)) {
+                                @Override
+                                public void close() {
+                                    openStreams.decrementAndGet();
+                                }
+                            };
+                            connected = true;
+                        }
+                    }
+
+                    @Override
+                    public InputStream getInputStream() {
+                        connect();
+                        return stream;
+                    }
+
+                    @Override
+                    public long getContentLengthLong() {
+                        connect();
+                        return bytes.length;
+                    }
+                };
+            }
+        };
+        URL url = new URL("bundle", "3.0", -1, "/" + name, handler);
+        Mockito.when(bundle.getResource(name)).thenReturn(url);
+        return openStreams;
+    }
+
+    private void addResource(String name, String content) throws IOException {
+        File file = File.createTempFile("resource", name);
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Mockito.when(bundle.getResource(name))
+                .thenReturn(file.toURI().toURL());
+        Mockito.when(bundle.getResource("/" + name))
+                .thenReturn(file.toURI().toURL());
+    }
+
+    private static String read(BundleResourceCache.Resource resource)
+            throws IOException {
+        try (InputStream stream = resource.openStream()) {
+            return IOUtils.toString(stream, StandardCharsets.UTF_8);
+        }
+    }
+
+}
@@ -0,0 +1,438 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+
+import com.vaadin.flow.osgi.support.BundleResourceCache.Encoding;
+import com.vaadin.flow.osgi.support.BundleResourceServlet.ByteRange;
+
+public class BundleResourceServletTest {
+
+    private static final String PATH = "/META-INF/resources/VAADIN/static/push/vaadin-push.js";
+
+    private final Bundle bundle = Mockito.mock(Bundle.class);
+
+    private final BundleResourceCache cache = new BundleResourceCache();
+
+    private final HttpServletRequest request = Mockito
+            .mock(HttpServletRequest.class);
+
+    private final HttpServletResponse response = Mockito
+            .mock(HttpServletResponse.class);
+
+    private final ServletConfig config = Mockito.mock(ServletConfig.class);
+
+    private BundleResourceServlet servlet;
+
+    private static class SlowOutputStream extends ServletOutputStream {
+
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+        private int readyWrites;
+
+        private WriteListener listener;
+
+        @Override
+        public boolean isReady() {
+            return readyWrites > 0;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void write(int b) {
+            written.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            readyWrites--;
+            written.write(bytes, offset, length);
+        }
+    }
+
+    @Before
+    public void setUp() throws ServletException, IOException {
+        BundleContext context = Mockito.mock(BundleContext.class);
+        Mockito.when(context.getProperty(BundleResourceCache.SIZE_PROPERTY))
+                .thenReturn("1024");
+        cache.activate(context);
+
+        Mockito.when(bundle.getBundleId()).thenReturn(3L);
+        Mockito.when(bundle.getLastModified()).thenReturn(100_000L);
+        addResource("/static/a.js", "1234");
+
+        // the containers return -1 if there is no date header
+        Mockito.when(request.getDateHeader(Mockito.anyString()))
+                .thenReturn(-1L);
+
+        servlet = new BundleResourceServlet(bundle, "/static", cache);
+        Mockito.when(config.getServletContext())
+                .thenReturn(Mockito.mock(ServletContext.class));
+        servlet.init(config);
+    }
+
+    @Test
+    public void doHead_notCachedResource_contentIsNotRead()
+            throws ServletException, IOException {
+        Mockito.when(request.getPathInfo()).thenReturn("/a.js");
+
+        servlet.doHead(request, response);
+
+        Mockito.verify(response).setContentLengthLong(4);
+        Mockito.verify(response, Mockito.never()).getOutputStream();
+        Assert.assertEquals(0, cache.getMissCount());
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void doGet_missingResourceWithConditionalHeaders_notFound()
+            throws ServletException, IOException {
+        Mockito.when(request.getPathInfo()).thenReturn("/missing.js");
+        Mockito.when(request.getHeader("If-None-Match")).thenReturn("*");
+        Mockito.when(request.getHeaders("If-None-Match"))
+                .thenAnswer(invocation -> Collections
+                        .enumeration(Arrays.asList("*")));
+
+        servlet.doGet(request, response);
+
+        Mockito.verify(response).setStatus(HttpServletResponse.SC_NOT_FOUND);
+        Mockito.verify(response, Mockito.never())
+                .setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
+
+    @Test
+    public void doGet_notModifiedSince_notModifiedWithoutReadingContent()
+            throws ServletException, IOException {
+        Mockito.when(request.getPathInfo()).thenReturn("/a.js");
+        Mockito.when(request.getHeader("If-Modified-Since"))
+                .thenReturn("Thu, 01 Jan 1970 00:01:40 GMT");
+        Mockito.when(request.getDateHeader("If-Modified-Since"))
+                .thenReturn(100_000L);
+
+        servlet.doGet(request, response);
+
+        Mockito.verify(response)
+                .setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        Mockito.verify(response, Mockito.never()).getOutputStream();
+        Assert.assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void doGet_matchedETag_resourceIsNotOpened()
+            throws ServletException, IOException {
+        URL url = new URL("bundle", "3.0", -1, "/static/b.js",
+                new URLStreamHandler() {
+                    @Override
+                    protected URLConnection openConnection(URL u)
+                            throws IOException {
+                        throw new IOException("The resource is opened");
+                    }
+                });
+        Mockito.when(bundle.getResource("/static/b.js")).thenReturn(url);
+        Mockito.when(request.getPathInfo()).thenReturn("/b.js");
+        Mockito.when(request.getHeader("If-None-Match")).thenReturn("*");
+        Mockito.when(request.getHeaders("If-None-Match"))
+                .thenAnswer(invocation -> Collections
+                        .enumeration(Arrays.asList("*")));
+
+        servlet.doGet(request, response);
+
+        Mockito.verify(response)
+                .setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        Mockito.verify(response, Mockito.never()).getOutputStream();
+    }
+
+    @Test
+    public void doHeadAndDoGet_compressedOnTheFly_sameRepresentation()
+            throws ServletException, IOException {
+        addResource("/static/c.js", createContent(200));
+        Mockito.when(servlet.getServletContext().getMimeType("/c.js"))
+                .thenReturn("application/javascript");
+        Mockito.when(request.getPathInfo()).thenReturn("/c.js");
+        Mockito.when(request.getHeaders("Accept-Encoding"))
+                .thenAnswer(invocation -> Collections
+                        .enumeration(Arrays.asList("gzip")));
+
+        // the gzip variant isn't offered until it's compressed and cached
+        HttpServletResponse head = serve(false);
+        HttpServletResponse get = serve(true);
+        for (HttpServletResponse response : Arrays.asList(head, get)) {
+            Mockito.verify(response, Mockito.never())
+                    .setHeader("Content-Encoding", "gzip");
+            Mockito.verify(response).setContentLengthLong(200);
+        }
+
+        long length = cache
+                .peekEncodedResource(bundle, "/static/c.js", Encoding.GZIP)
+                .get().getLength();
+        head = serve(false);
+        get = serve(true);
+        for (HttpServletResponse response : Arrays.asList(head, get)) {
+            Mockito.verify(response).setHeader("Content-Encoding", "gzip");
+            Mockito.verify(response).setContentLengthLong(length);
+        }
+    }
+
+    @Test
+    public void doGet_asyncServing_contentIsWrittenWhenStreamIsReady()
+            throws ServletException, IOException {
+        String content = createContent(2 * 8 * 1024 + 10);
+        BundleResourceServlet servlet = createAsyncServlet(content);
+        Mockito.when(request.isAsyncSupported()).thenReturn(true);
+        AsyncContext asyncContext = Mockito.mock(AsyncContext.class);
+        Mockito.when(request.startAsync()).thenReturn(asyncContext);
+        SlowOutputStream out = new SlowOutputStream();
+        Mockito.when(response.getOutputStream()).thenReturn(out);
+
+        servlet.doGet(request, response);
+
+        Assert.assertNotNull(out.listener);
+        Assert.assertEquals(0, out.written.size());
+
+        // the client accepts one chunk only
+        out.readyWrites = 1;
+        out.listener.onWritePossible();
+        Assert.assertEquals(8 * 1024, out.written.size());
+        Mockito.verify(asyncContext, Mockito.never()).complete();
+
+        out.readyWrites = 10;
+        out.listener.onWritePossible();
+        Assert.assertEquals(content,
+                new String(out.written.toByteArray(), StandardCharsets.UTF_8));
+        Mockito.verify(asyncContext).complete();
+    }
+
+    @Test
+    public void doGet_asyncServingWriteFails_requestIsCompleted()
+            throws ServletException, IOException {
+        BundleResourceServlet servlet = createAsyncServlet("1234");
+        Mockito.when(request.isAsyncSupported()).thenReturn(true);
+        AsyncContext asyncContext = Mockito.mock(AsyncContext.class);
+        Mockito.when(request.startAsync()).thenReturn(asyncContext);
+        SlowOutputStream out = new SlowOutputStream();
+        Mockito.when(response.getOutputStream()).thenReturn(out);
+        servlet.doGet(request, response);
+
+        out.listener.onError(new IOException("Connection reset"));
+
+        Mockito.verify(asyncContext).complete();
+    }
+
+    @Test
+    public void doGet_asyncNotSupported_contentIsWrittenImmediately()
+            throws ServletException, IOException {
+        BundleResourceServlet servlet = createAsyncServlet("1234");
+        SlowOutputStream out = new SlowOutputStream();
+        Mockito.when(response.getOutputStream()).thenReturn(out);
+
+        servlet.doGet(request, response);
+
+        Assert.assertNull(out.listener);
+        Assert.assertEquals("1234",
+                new String(out.written.toByteArray(), StandardCharsets.UTF_8));
+        Mockito.verify(request, Mockito.never()).startAsync();
+    }
+
+    @Test
+    public void createETag_sameRevision_sameTag() {
+        Assert.assertEquals(BundleResourceServlet.createETag(5, 100L, PATH),
+                BundleResourceServlet.createETag(5, 100L, PATH));
+    }
+
+    @Test
+    public void createETag_updatedBundleOrOtherPath_differentTag() {
+        String eTag = BundleResourceServlet.createETag(5, 100L, PATH);
+
+        Assert.assertTrue(eTag.startsWith("\"") && eTag.endsWith("\""));
+        Assert.assertNotEquals(eTag,
+                BundleResourceServlet.createETag(5, 101L, PATH));
+        Assert.assertNotEquals(eTag,
+                BundleResourceServlet.createETag(6, 100L, PATH));
+        Assert.assertNotEquals(eTag,
+                BundleResourceServlet.createETag(5, 100L, PATH + ".map"));
+    }
+
+    @Test
+    public void matchesETag_listedOrWeakOrWildcard_matches() {
+        String eTag = BundleResourceServlet.createETag(5, 100L, PATH);
+
+        Assert.assertTrue(BundleResourceServlet.matchesETag(
+                Collections.enumeration(
+                        Arrays.asList("\"foo\", " + eTag)),
+                eTag));
+        Assert.assertTrue(BundleResourceServlet.matchesETag(
+                Collections.enumeration(Arrays.asList("W/" + eTag)), eTag));
+        Assert.assertTrue(BundleResourceServlet.matchesETag(
+                Collections.enumeration(Arrays.asList("*")), eTag));
+    }
+
+    @Test
+    public void matchesETag_otherTagOrNoHeader_doesNotMatch() {
+        String eTag = BundleResourceServlet.createETag(5, 100L, PATH);
+
+        Assert.assertFalse(BundleResourceServlet.matchesETag(
+                Collections.enumeration(Arrays.asList("\"foo\"")), eTag));
+        Assert.assertFalse(BundleResourceServlet.matchesETag(null, eTag));
+    }
+
+    @Test
+    public void createETag_encodedVariant_differentStrongTag() {
+        String eTag = BundleResourceServlet.createETag(5, 100L, PATH);
+        String gzipETag = BundleResourceServlet.createETag(eTag,
+                Encoding.GZIP);
+
+        Assert.assertNotEquals(eTag, gzipETag);
+        Assert.assertTrue(gzipETag.startsWith("\"") && gzipETag.endsWith("\""));
+        Assert.assertNotEquals(gzipETag,
+                BundleResourceServlet.createETag(eTag, Encoding.BROTLI));
+    }
+
+    @Test
+    public void getAcceptedEncodings_serverPreferenceOrder() {
+        Assert.assertEquals(Arrays.asList(Encoding.BROTLI, Encoding.GZIP),
+                BundleResourceServlet.getAcceptedEncodings(
+                        Collections.enumeration(Arrays
+                                .asList("gzip, deflate", "BR;q=0.5"))));
+        Assert.assertEquals(Arrays.asList(Encoding.BROTLI, Encoding.GZIP),
+                BundleResourceServlet.getAcceptedEncodings(Collections
+                        .enumeration(Arrays.asList("*"))));
+    }
+
+    @Test
+    public void getAcceptedEncodings_zeroQuality_notAccepted() {
+        Assert.assertEquals(Arrays.asList(Encoding.GZIP),
+                BundleResourceServlet.getAcceptedEncodings(
+                        Collections.enumeration(Arrays.asList(
+                                "gzip;q=1.0, br;q=0"))));
+        Assert.assertEquals(Arrays.asList(Encoding.BROTLI),
+                BundleResourceServlet.getAcceptedEncodings(
+                        Collections.enumeration(Arrays.asList(
+                                "*;q=0.1, gzip;q=0"))));
+        Assert.assertEquals(Collections.emptyList(),
+                BundleResourceServlet.getAcceptedEncodings(null));
+    }
+
+    @Test
+    public void parseRange_singleRange_rangeIsLimitedByLength() {
+        assertRange(0, 99, BundleResourceServlet.parseRange("bytes=0-99", 1000));
+        assertRange(500, 999,
+                BundleResourceServlet.parseRange("bytes=500-", 1000));
+        assertRange(900, 999,
+                BundleResourceServlet.parseRange("bytes=900-5000", 1000));
+        assertRange(990, 999,
+                BundleResourceServlet.parseRange("bytes=-10", 1000));
+        assertRange(0, 999,
+                BundleResourceServlet.parseRange("bytes=-5000", 1000));
+    }
+
+    @Test
+    public void parseRange_unsupportedOrInvalidRange_ignored() {
+        Assert.assertNull(BundleResourceServlet.parseRange(null, 1000));
+        Assert.assertNull(
+                BundleResourceServlet.parseRange("bytes=0-1,5-6", 1000));
+        Assert.assertNull(BundleResourceServlet.parseRange("bytes=5-1", 1000));
+        Assert.assertNull(BundleResourceServlet.parseRange("bytes=a-", 1000));
+        Assert.assertNull(BundleResourceServlet.parseRange("items=0-1", 1000));
+    }
+
+    @Test
+    public void parseRange_rangeAfterContent_unsatisfiable() {
+        Assert.assertSame(ByteRange.UNSATISFIABLE,
+                BundleResourceServlet.parseRange("bytes=1000-", 1000));
+        Assert.assertSame(ByteRange.UNSATISFIABLE,
+                BundleResourceServlet.parseRange("bytes=-0", 1000));
+    }
+
+    /**
+     * Creates a servlet which serves the cached {@code /big.js} resource
+     * asynchronously.
+     */
+    private BundleResourceServlet createAsyncServlet(String content)
+            throws ServletException, IOException {
+        BundleContext context = Mockito.mock(BundleContext.class);
+        Mockito.when(context.getProperty(BundleResourceCache.SIZE_PROPERTY))
+                .thenReturn("1048576");
+        Mockito.when(context.getProperty(BundleResourceCache.ASYNC_PROPERTY))
+                .thenReturn(Boolean.TRUE.toString());
+        BundleResourceCache cache = new BundleResourceCache();
+        cache.activate(context);
+        addResource("/static/big.js", content);
+        Mockito.when(request.getPathInfo()).thenReturn("/big.js");
+
+        BundleResourceServlet servlet = new BundleResourceServlet(bundle,
+                "/static", cache);
+        servlet.init(config);
+        return servlet;
+    }
+
+    private static String createContent(int length) {
+        StringBuilder content = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            content.append((char) ('a' + i % 26));
+        }
+        return content.toString();
+    }
+
+    private HttpServletResponse serve(boolean get)
+            throws ServletException, IOException {
+        HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
+        Mockito.when(response.getOutputStream())
+                .thenReturn(new SlowOutputStream());
+        if (get) {
+            servlet.doGet(request, response);
+        } else {
+            servlet.doHead(request, response);
+        }
+        return response;
+    }
+
+    private void addResource(String name, String content) throws IOException {
+        File file = File.createTempFile("resource", ".js");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Mockito.when(bundle.getResource(name))
+                .thenReturn(file.toURI().toURL());
+    }
+
+    private static void assertRange(long start, long end, ByteRange range) {
+        Assert.assertEquals(start, range.getStart());
+        Assert.assertEquals(end, range.getEnd());
+    }
+
+}
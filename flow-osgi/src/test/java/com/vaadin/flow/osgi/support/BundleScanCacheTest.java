@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Version;
+
+public class BundleScanCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private BundleScanCache cache;
+
+    private File jar;
+
+    @Before
+    public void setUp() throws IOException {
+        BundleContext context = Mockito.mock(BundleContext.class);
+        Mockito.when(context.getDataFile("scan-cache"))
+                .thenReturn(new File(temporaryFolder.newFolder(), "cache"));
+        cache = BundleScanCache.create(context).get();
+        jar = temporaryFolder.newFile("bundle.jar");
+        writeJar("content");
+    }
+
+    @Test
+    public void read_storedIndex_indexIsRestored() throws IOException {
+        Bundle bundle = mockBundle("1.0.0");
+
+        cache.write(bundle, createIndex());
+
+        Assert.assertEquals(Collections.singletonList("com.example.View"),
+                cache.read(bundle).get().getClassNames());
+    }
+
+    @Test
+    public void read_severalVersionsOfBundle_indexPerVersion()
+            throws IOException {
+        Bundle bundle = mockBundle("1.0.0");
+        Bundle otherVersion = mockBundle("1.1.0");
+
+        cache.write(bundle, createIndex());
+        Assert.assertFalse(cache.read(otherVersion).isPresent());
+        cache.write(otherVersion, createIndex());
+
+        Assert.assertTrue(cache.read(bundle).isPresent());
+        Assert.assertTrue(cache.read(otherVersion).isPresent());
+    }
+
+    @Test
+    public void read_rebuiltJarWithSameManifest_noIndex() throws IOException {
+        Bundle bundle = mockBundle("1.0.0");
+        cache.write(bundle, createIndex());
+
+        writeJar("changed content");
+
+        Assert.assertFalse(cache.read(bundle).isPresent());
+    }
+
+    @Test
+    public void remove_indexIsRemoved() throws IOException {
+        Bundle bundle = mockBundle("1.0.0");
+        Bundle otherVersion = mockBundle("1.1.0");
+        cache.write(bundle, createIndex());
+        cache.write(otherVersion, createIndex());
+
+        cache.remove(bundle);
+
+        Assert.assertFalse(cache.read(bundle).isPresent());
+        Assert.assertTrue(cache.read(otherVersion).isPresent());
+    }
+
+    private Bundle mockBundle(String version) throws IOException {
+        Bundle bundle = Mockito.mock(Bundle.class);
+        Mockito.when(bundle.getSymbolicName()).thenReturn("com.example");
+        Mockito.when(bundle.getVersion()).thenReturn(new Version(version));
+        Mockito.when(bundle.getLastModified()).thenReturn(100L);
+        Mockito.when(bundle.getLocation())
+                .thenReturn("reference:" + jar.toURI());
+        Mockito.when(bundle.getEntry("META-INF/MANIFEST.MF")).thenReturn(
+                new URL("jar:" + jar.toURI() + "!/META-INF/MANIFEST.MF"));
+        return bundle;
+    }
+
+    private void writeJar(String classContent) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION,
+                "1.0");
+        manifest.getMainAttributes().putValue("Bundle-SymbolicName",
+                "com.example");
+        try (OutputStream out = Files.newOutputStream(jar.toPath());
+                JarOutputStream stream = new JarOutputStream(out, manifest)) {
+            stream.putNextEntry(new ZipEntry("com/example/View.class"));
+            stream.write(classContent.getBytes(StandardCharsets.UTF_8));
+            stream.closeEntry();
+        }
+    }
+
+    private static BundleClassIndex createIndex() {
+        return new BundleClassIndex(
+                Collections.singletonList("com.example.View"),
+                Collections.emptyList());
+    }
+
+}
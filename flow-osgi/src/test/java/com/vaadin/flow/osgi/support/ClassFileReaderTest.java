@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClassFileReaderTest {
+
+    @Retention(RetentionPolicy.RUNTIME)
+    private @interface Visible {
+        String value() default "";
+
+        int[] numbers() default {};
+    }
+
+    @Retention(RetentionPolicy.CLASS)
+    private @interface Invisible {
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Repeatable(Repeated.Container.class)
+    private @interface Repeated {
+
+        @Retention(RetentionPolicy.RUNTIME)
+        @interface Container {
+            Repeated[] value();
+        }
+    }
+
+    @Visible(value = "foo", numbers = { 1, 2 })
+    @Invisible
+    @SuppressWarnings("serial")
+    private static class Annotated extends ArrayList<String>
+            implements Runnable, Comparable<Annotated> {
+
+        private static final long LONG_CONSTANT = 42L;
+
+        private static final double DOUBLE_CONSTANT = 4.2d;
+
+        private String field = "field";
+
+        @Override
+        public void run() {
+            Runnable runnable = () -> field = String
+                    .valueOf(LONG_CONSTANT + DOUBLE_CONSTANT);
+            runnable.run();
+        }
+
+        @Override
+        public int compareTo(Annotated other) {
+            return 0;
+        }
+    }
+
+    @Repeated
+    @Repeated
+    private interface RepeatedInterface {
+    }
+
+    @Test
+    public void read_annotatedClass_typeInformationIsRead()
+            throws IOException {
+        ClassDescriptor descriptor = read(Annotated.class);
+
+        Assert.assertEquals(Annotated.class.getName(), descriptor.getName());
+        Assert.assertEquals(ArrayList.class.getName(),
+                descriptor.getSuperName());
+        Assert.assertEquals(Arrays.asList(Runnable.class.getName(),
+                Comparable.class.getName()), descriptor.getInterfaces());
+        Assert.assertEquals(Collections.singleton(Visible.class.getName()),
+                descriptor.getAnnotations());
+    }
+
+    @Test
+    public void read_repeatedAnnotations_containerAndAnnotationAreRead()
+            throws IOException {
+        ClassDescriptor descriptor = read(RepeatedInterface.class);
+
+        Assert.assertEquals(Object.class.getName(),
+                descriptor.getSuperName());
+        Assert.assertTrue(descriptor.getInterfaces().isEmpty());
+        Assert.assertEquals(
+                new HashSet<>(Arrays.asList(Repeated.class.getName(),
+                        Repeated.Container.class.getName())),
+                descriptor.getAnnotations());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_notClassFile_throws() throws IOException {
+        ClassFileReader.read(new ByteArrayInputStream(new byte[] { 1, 2, 3,
+                4, 5, 6, 7, 8 }));
+    }
+
+    @Test(expected = IOException.class)
+    public void read_truncatedClassFile_throws() throws IOException {
+        byte[] content;
+        try (InputStream stream = getClassFile(Annotated.class)) {
+            content = stream.readAllBytes();
+        }
+        ClassFileReader.read(new ByteArrayInputStream(
+                Arrays.copyOf(content, content.length / 2)));
+    }
+
+    private ClassDescriptor read(Class<?> clazz) throws IOException {
+        try (InputStream stream = getClassFile(clazz)) {
+            return ClassFileReader.read(stream);
+        }
+    }
+
+    private InputStream getClassFile(Class<?> clazz) {
+        return clazz.getResourceAsStream(
+                "/" + clazz.getName().replace('.', '/') + ".class");
+    }
+
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClassTypeIndexTest {
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Marker {
+    }
+
+    public interface Handled {
+    }
+
+    public static class HandledImpl implements Handled {
+    }
+
+    public static class HandledSubclass extends HandledImpl {
+    }
+
+    @Marker
+    public static class Marked {
+    }
+
+    public static class Other {
+    }
+
+    @Test
+    public void getClasses_supertypeAndAnnotation_matchingClassesAreReturned() {
+        ClassTypeIndex index = new ClassTypeIndex();
+        index.put(1L, Arrays.asList(HandledImpl.class, Marked.class));
+        index.put(2L, Arrays.asList(HandledSubclass.class, Other.class));
+
+        Assert.assertEquals(
+                new HashSet<>(
+                        Arrays.asList(HandledImpl.class, HandledSubclass.class)),
+                index.getClasses(Handled.class));
+        Assert.assertEquals(Collections.singleton(Marked.class),
+                index.getClasses(Marker.class));
+        Assert.assertEquals(
+                new HashSet<>(Arrays.asList(HandledImpl.class,
+                        HandledSubclass.class, Marked.class)),
+                index.getClasses(Handled.class, Marker.class));
+    }
+
+    @Test
+    public void getClasses_bundlesChangedAfterQuery_indexIsMaintained() {
+        ClassTypeIndex index = new ClassTypeIndex();
+        index.put(1L, Arrays.asList(HandledImpl.class, Marked.class));
+        index.getClasses(Handled.class);
+
+        index.put(2L, Collections.singletonList(HandledSubclass.class));
+        Assert.assertEquals(
+                new HashSet<>(
+                        Arrays.asList(HandledImpl.class, HandledSubclass.class)),
+                index.getClasses(Handled.class));
+
+        index.put(1L, Collections.singletonList(Marked.class));
+        Assert.assertEquals(Collections.singleton(HandledSubclass.class),
+                index.getClasses(Handled.class));
+
+        Assert.assertEquals(
+                Collections.singletonList(HandledSubclass.class),
+                index.remove(2L));
+        Assert.assertTrue(index.getClasses(Handled.class).isEmpty());
+        Assert.assertEquals(Collections.singletonList(Marked.class),
+                index.getClasses());
+    }
+
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ContextInitializationTest {
+
+    private final ContextInitialization initialization = new ContextInitialization();
+
+    @Test
+    public void run_initializationSucceeds_completed()
+            throws InterruptedException {
+        Assert.assertFalse(initialization.await(0, TimeUnit.MILLISECONDS));
+
+        initialization.run(() -> {
+        });
+
+        Assert.assertTrue(initialization.isDone());
+        Assert.assertFalse(initialization.isFailed());
+        Assert.assertTrue(initialization.await(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void run_initializationThrowsException_completedAndFailed()
+            throws InterruptedException {
+        initialization.run(() -> {
+            throw new IllegalStateException();
+        });
+
+        Assert.assertTrue(initialization.isDone());
+        Assert.assertTrue(initialization.isFailed());
+        Assert.assertTrue(initialization.await(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void run_initializationThrowsError_completedAndRethrown()
+            throws InterruptedException {
+        NoClassDefFoundError error = new NoClassDefFoundError();
+        try {
+            initialization.run(() -> {
+                throw error;
+            });
+            Assert.fail("The error is swallowed");
+        } catch (NoClassDefFoundError thrown) {
+            Assert.assertSame(error, thrown);
+        }
+
+        Assert.assertTrue(initialization.isDone());
+        Assert.assertTrue(initialization.isFailed());
+        Assert.assertTrue(initialization.await(0, TimeUnit.MILLISECONDS));
+    }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+import com.vaadin.flow.i18n.I18NProvider;
+import com.vaadin.flow.shared.Registration;
+
+public class OSGiInstantiatorFactoryTest {
+
+    public static class Component {
+    }
+
+    public static class FailingComponent {
+
+        public FailingComponent() {
+            throw new IllegalStateException("Failure");
+        }
+    }
+
+    public static class ErrorComponent {
+
+        public ErrorComponent() {
+            throw new NoClassDefFoundError("Missing");
+        }
+    }
+
+    @Test
+    public void createInstance_publicClass_instanceIsCreated() {
+        Component first = OSGiInstantiatorFactory
+                .createInstance(Component.class);
+        Component second = OSGiInstantiatorFactory
+                .createInstance(Component.class);
+
+        Assert.assertNotNull(first);
+        Assert.assertNotSame(first, second);
+    }
+
+    @Test
+    public void createInstance_constructorThrowsException_exceptionIsWrapped() {
+        try {
+            OSGiInstantiatorFactory.createInstance(FailingComponent.class);
+            Assert.fail("Exception is expected");
+        } catch (IllegalArgumentException exception) {
+            Assert.assertTrue(exception.getMessage()
+                    .contains(FailingComponent.class.getName()));
+            Assert.assertTrue(
+                    exception.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void createInstance_constructorThrowsError_errorIsWrapped() {
+        try {
+            OSGiInstantiatorFactory.createInstance(ErrorComponent.class);
+            Assert.fail("Exception is expected");
+        } catch (IllegalArgumentException exception) {
+            Assert.assertTrue(
+                    exception.getCause() instanceof NoClassDefFoundError);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createInstance_inaccessibleClass_reflectionIsUsed() {
+        // the class can't be instantiated via public API
+        OSGiInstantiatorFactory.createInstance(Runnable.class);
+    }
+
+    @Test
+    public void serviceChanged_generationIsIncrementedAndListenersNotifiedOnce()
+            throws InvalidSyntaxException {
+        BundleContext context = Mockito.mock(BundleContext.class);
+        AtomicReference<ServiceListener> serviceListener = new AtomicReference<>();
+        Mockito.doAnswer(invocation -> {
+            serviceListener.set(invocation.getArgument(0));
+            return null;
+        }).when(context).addServiceListener(Mockito.any(),
+                Mockito.anyString());
+        OSGiInstantiatorFactory factory = new OSGiInstantiatorFactory();
+        factory.activate(context);
+        List<Class<?>> invalidated = new ArrayList<>();
+        Registration registration = factory
+                .addInvalidationListener(invalidated::add);
+
+        serviceListener.get().serviceChanged(new ServiceEvent(
+                ServiceEvent.REGISTERED, mockReference(I18NProvider.class)));
+
+        Assert.assertEquals(1, factory.getGeneration());
+        Assert.assertEquals(Arrays.asList(I18NProvider.class), invalidated);
+        Mockito.verify(context, Mockito.times(1))
+                .addServiceListener(Mockito.any(), Mockito.anyString());
+
+        registration.remove();
+        serviceListener.get().serviceChanged(new ServiceEvent(
+                ServiceEvent.UNREGISTERING, mockReference(I18NProvider.class)));
+
+        Assert.assertEquals(2, factory.getGeneration());
+        Assert.assertEquals(1, invalidated.size());
+    }
+
+    @Test
+    public void deactivate_serviceListenerIsRemoved()
+            throws InvalidSyntaxException {
+        BundleContext context = Mockito.mock(BundleContext.class);
+        OSGiInstantiatorFactory factory = new OSGiInstantiatorFactory();
+        factory.activate(context);
+
+        factory.deactivate();
+
+        Mockito.verify(context).removeServiceListener(Mockito.any());
+    }
+
+    private static ServiceReference<?> mockReference(Class<?> type) {
+        ServiceReference<?> reference = Mockito.mock(ServiceReference.class);
+        Mockito.when(reference.getProperty(Constants.OBJECTCLASS))
+                .thenReturn(new String[] { type.getName() });
+        return reference;
+    }
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PackageFilterTest {
+
+    @Test
+    public void noHeaders_allClassesAreAccepted() {
+        PackageFilter filter = PackageFilter.parse(null, " ");
+
+        Assert.assertEquals(Collections.singletonList("/"),
+                filter.getRoots());
+        Assert.assertTrue(filter.accept("com.example.View"));
+        Assert.assertTrue(filter.accept("Default"));
+    }
+
+    @Test
+    public void include_packageAndSubpackagesAreAccepted() {
+        PackageFilter filter = PackageFilter.parse("com.example.ui.*", null);
+
+        Assert.assertTrue(filter.accept("com.example.ui.View"));
+        Assert.assertTrue(filter.accept("com.example.ui.admin.View"));
+        Assert.assertFalse(filter.accept("com.example.uikit.Button"));
+        Assert.assertFalse(filter.accept("com.example.Main"));
+    }
+
+    @Test
+    public void includeAndExclude_excludeTakesPrecedence() {
+        PackageFilter filter = PackageFilter.parse("com.example.*",
+                "com.example.lib.*, *.internal");
+
+        Assert.assertTrue(filter.accept("com.example.View"));
+        Assert.assertFalse(filter.accept("com.example.lib.Util"));
+        Assert.assertFalse(filter.accept("com.example.lib.json.Parser"));
+        Assert.assertFalse(filter.accept("com.example.ui.internal.Impl"));
+        Assert.assertEquals(
+                Collections.singletonList("com.example.View"),
+                filter.filter(Arrays.asList("com.example.View",
+                        "com.example.lib.Util", "org.other.Type")));
+    }
+
+    @Test
+    public void getRoots_nestedAndPartialGlobs_minimalDirectoriesAreListed() {
+        PackageFilter filter = PackageFilter.parse(
+                "com.example.ui.*, com.example.ui.admin, com.example.vie*, org.acme.Views",
+                null);
+
+        Assert.assertEquals(Arrays.asList("/com/example", "/org/acme/Views"),
+                filter.getRoots());
+    }
+
+}
@@ -0,0 +1,325 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import javax.servlet.ServletContext;
+import javax.servlet.annotation.HandlesTypes;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.osgi.framework.BundleContext;
+
+import com.vaadin.flow.server.startup.ClassLoaderAwareServletContainerInitializer;
+
+public class ServletContainerInitializerClassesTest {
+
+    private static final Map<ServletContext, Thread> RUNS = new ConcurrentHashMap<>();
+
+    private static final List<Class<?>> INVOKED = new CopyOnWriteArrayList<>();
+
+    private static final Set<Object> INSTANCES = Collections
+            .synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    private static volatile CountDownLatch blocked;
+
+    private final ServletContainerInitializerClasses initializerClasses = new ServletContainerInitializerClasses();
+
+    private final ServletContext first = Mockito.mock(ServletContext.class);
+
+    private final ServletContext second = Mockito.mock(ServletContext.class);
+
+    public static class RecordingInitializer
+            implements ClassLoaderAwareServletContainerInitializer {
+
+        @Override
+        public void process(Set<Class<?>> classes, ServletContext context) {
+            RUNS.put(context, Thread.currentThread());
+            CountDownLatch latch = blocked;
+            if (latch != null) {
+                latch.countDown();
+                try {
+                    // blocks until the task is cancelled
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    @HandlesTypes(Runnable.class)
+    public static class RunnableInitializer
+            implements ClassLoaderAwareServletContainerInitializer {
+
+        @Override
+        public void process(Set<Class<?>> classes, ServletContext context) {
+            INVOKED.add(RunnableInitializer.class);
+        }
+    }
+
+    @HandlesTypes(Serializable.class)
+    public static class SerializableInitializer
+            implements ClassLoaderAwareServletContainerInitializer {
+
+        @Override
+        public void process(Set<Class<?>> classes, ServletContext context) {
+            INVOKED.add(SerializableInitializer.class);
+        }
+    }
+
+    public static class AllClassesInitializer
+            implements ClassLoaderAwareServletContainerInitializer {
+
+        @Override
+        public void process(Set<Class<?>> classes, ServletContext context) {
+            INVOKED.add(AllClassesInitializer.class);
+        }
+    }
+
+    public static class StatelessInitializer
+            implements ClassLoaderAwareServletContainerInitializer {
+
+        @Override
+        public void process(Set<Class<?>> classes, ServletContext context) {
+            INSTANCES.add(this);
+        }
+    }
+
+    public static class StatefulInitializer
+            implements ClassLoaderAwareServletContainerInitializer {
+
+        private ServletContext context;
+
+        @Override
+        public void process(Set<Class<?>> classes, ServletContext context) {
+            this.context = context;
+            INSTANCES.add(this);
+        }
+    }
+
+    public static class Task implements Runnable {
+
+        @Override
+        public void run() {
+        }
+    }
+
+    public static class Data implements Serializable {
+    }
+
+    @Before
+    public void setUp() {
+        INVOKED.clear();
+        INSTANCES.clear();
+        BundleContext context = Mockito.mock(BundleContext.class);
+        Mockito.when(context.getProperty(
+                ServletContainerInitializerClasses.THREADS_PROPERTY))
+                .thenReturn("2");
+        initializerClasses.activate(context);
+        initializerClasses.setServletContainerInitializers(
+                Collections.singletonList(RecordingInitializer.class));
+        initializerClasses.addContext(first);
+        initializerClasses.addContext(second);
+        RUNS.clear();
+    }
+
+    @After
+    public void tearDown() {
+        blocked = null;
+        initializerClasses.deactivate();
+    }
+
+    @Test
+    public void addScannedClasses_severalContexts_initializersRunInPool() {
+        initializerClasses.addScannedClasses(
+                Collections.singletonMap(1L, classes(String.class)));
+
+        Assert.assertEquals(2, RUNS.size());
+        Assert.assertNotSame(Thread.currentThread(), RUNS.get(first));
+        Assert.assertNotSame(Thread.currentThread(), RUNS.get(second));
+    }
+
+    @Test
+    public void addScannedClasses_interrupted_failureIsThrown()
+            throws InterruptedException {
+        blocked = new CountDownLatch(2);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicReference<Boolean> interrupted = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                initializerClasses.addScannedClasses(
+                        Collections.singletonMap(1L, classes(String.class)));
+            } catch (RuntimeException exception) {
+                failure.set(exception);
+            }
+            interrupted.set(Thread.currentThread().isInterrupted());
+        });
+        thread.start();
+        Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        thread.interrupt();
+        thread.join(5000);
+
+        Assert.assertTrue(failure.get() instanceof IllegalStateException);
+        Assert.assertTrue(interrupted.get());
+    }
+
+    @Test
+    public void addScannedClasses_noPool_initializersRunInCallingThread() {
+        initializerClasses.deactivate();
+
+        initializerClasses.addScannedClasses(
+                Collections.singletonMap(1L, classes(String.class)));
+
+        Assert.assertEquals(2, RUNS.size());
+        Assert.assertSame(Thread.currentThread(), RUNS.get(first));
+        Assert.assertSame(Thread.currentThread(), RUNS.get(second));
+    }
+
+    @Test
+    public void addScannedClasses_incrementalMode_onlyAffectedInitializersAreRun() {
+        ServletContainerInitializerClasses initializerClasses = createInitializerClasses(
+                true);
+
+        initializerClasses.addScannedClasses(
+                Collections.singletonMap(5L, classes(Task.class)));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList(
+                RunnableInitializer.class, AllClassesInitializer.class)),
+                new HashSet<>(INVOKED));
+    }
+
+    @Test
+    public void removeScannedClasses_incrementalMode_onlyAffectedInitializersAreRun() {
+        ServletContainerInitializerClasses initializerClasses = createInitializerClasses(
+                true);
+        Map<Long, Collection<Class<?>>> scanned = new HashMap<>();
+        scanned.put(5L, classes(Task.class));
+        scanned.put(6L, classes(Data.class));
+        initializerClasses.addScannedClasses(scanned);
+        INVOKED.clear();
+
+        initializerClasses.removeScannedClasses(6L);
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList(
+                SerializableInitializer.class, AllClassesInitializer.class)),
+                new HashSet<>(INVOKED));
+
+        INVOKED.clear();
+        initializerClasses.removeScannedClasses(7L);
+        Assert.assertTrue(INVOKED.isEmpty());
+    }
+
+    @Test
+    public void removeScannedClasses_notIncrementalModeUnknownBundle_nothingIsRun() {
+        ServletContainerInitializerClasses initializerClasses = createInitializerClasses(
+                false);
+
+        initializerClasses.removeScannedClasses(7L);
+
+        Assert.assertTrue(INVOKED.isEmpty());
+    }
+
+    @Test
+    public void removeScannedClasses_initializersAreNotDiscovered_nothingIsRun() {
+        ServletContainerInitializerClasses initializerClasses = new ServletContainerInitializerClasses();
+        initializerClasses.addContext(first);
+        initializerClasses.addScannedClasses(
+                Collections.singletonMap(5L, classes(Task.class)));
+
+        initializerClasses.removeScannedClasses(5L);
+        initializerClasses.removeScannedClasses(6L);
+
+        Assert.assertTrue(INVOKED.isEmpty());
+    }
+
+    @Test
+    public void addScannedClasses_notIncrementalMode_allInitializersAreRun() {
+        ServletContainerInitializerClasses initializerClasses = createInitializerClasses(
+                false);
+
+        initializerClasses.addScannedClasses(
+                Collections.singletonMap(5L, classes(Task.class)));
+
+        Assert.assertEquals(3, INVOKED.size());
+    }
+
+    @Test
+    public void addContext_statelessInitializer_instanceIsReused() {
+        ServletContainerInitializerClasses initializerClasses = new ServletContainerInitializerClasses();
+        initializerClasses.setServletContainerInitializers(
+                Collections.singletonList(StatelessInitializer.class));
+
+        initializerClasses.addContext(first);
+        initializerClasses.addContext(second);
+        Assert.assertEquals(1, INSTANCES.size());
+
+        // the discovered initializers are changed: the instance is dropped
+        initializerClasses.setServletContainerInitializers(
+                Collections.singletonList(StatelessInitializer.class));
+        initializerClasses.addContext(first);
+        Assert.assertEquals(2, INSTANCES.size());
+    }
+
+    @Test
+    public void addContext_statefulInitializer_instanceIsCreatedForEveryRun() {
+        ServletContainerInitializerClasses initializerClasses = new ServletContainerInitializerClasses();
+        initializerClasses.setServletContainerInitializers(
+                Collections.singletonList(StatefulInitializer.class));
+
+        initializerClasses.addContext(first);
+        initializerClasses.addContext(second);
+
+        Assert.assertEquals(2, INSTANCES.size());
+    }
+
+    /**
+     * Creates initializer classes with the initializers which handle
+     * different types and runs them once for the {@code first} context.
+     */
+    private ServletContainerInitializerClasses createInitializerClasses(
+            boolean incremental) {
+        BundleContext context = Mockito.mock(BundleContext.class);
+        Mockito.when(context.getProperty(
+                ServletContainerInitializerClasses.INCREMENTAL_PROPERTY))
+                .thenReturn(String.valueOf(incremental));
+        ServletContainerInitializerClasses initializerClasses = new ServletContainerInitializerClasses();
+        initializerClasses.activate(context);
+        initializerClasses.setServletContainerInitializers(Arrays.asList(
+                RunnableInitializer.class, SerializableInitializer.class,
+                AllClassesInitializer.class));
+        initializerClasses.addContext(first);
+        INVOKED.clear();
+        return initializerClasses;
+    }
+
+    private static Collection<Class<?>> classes(Class<?>... classes) {
+        return Arrays.asList(classes);
+    }
+
+}
@@ -0,0 +1,286 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import javax.servlet.ServletContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+import com.vaadin.flow.server.VaadinServletContext;
+
+public class ServletInitRequirementsTrackerTest {
+
+    public static class Service {
+    }
+
+    private final Bundle bundle = Mockito.mock(Bundle.class);
+
+    private final BundleContext context = Mockito.mock(BundleContext.class);
+
+    @SuppressWarnings("unchecked")
+    private final ServiceReference<Service> reference = Mockito
+            .mock(ServiceReference.class);
+
+    private final Service service = new Service();
+
+    private final AtomicReference<ServiceListener> listener = new AtomicReference<>();
+
+    private final AtomicReference<String> filter = new AtomicReference<>();
+
+    private ServletInitRequirementsTracker.OsgiLookupImpl lookup;
+
+    @Before
+    public void setUp() throws InvalidSyntaxException {
+        Mockito.when(bundle.getBundleContext()).thenReturn(context);
+        Mockito.when(reference.getBundle()).thenReturn(bundle);
+        Mockito.when(reference.getProperty(Constants.OBJECTCLASS))
+                .thenReturn(new String[] { Service.class.getName() });
+        Mockito.when(context.getService(reference)).thenReturn(service);
+        Mockito.doAnswer(invocation -> {
+            listener.set(invocation.getArgument(0));
+            filter.set(invocation.getArgument(1));
+            return null;
+        }).when(context).addServiceListener(Mockito.any(),
+                Mockito.anyString());
+
+        lookup = new ServletInitRequirementsTracker.OsgiLookupImpl(bundle,
+                null);
+    }
+
+    @Test
+    public void lookup_concreteClass_serviceIsGotOnce()
+            throws InvalidSyntaxException {
+        registerService();
+
+        Assert.assertSame(service, lookup.lookup(Service.class));
+        Assert.assertSame(service, lookup.lookup(Service.class));
+
+        Mockito.verify(context, Mockito.times(1))
+                .getServiceReferences(Service.class, null);
+        Mockito.verify(context, Mockito.times(1)).getService(reference);
+    }
+
+    @Test
+    public void lookup_noService_absenceIsCached()
+            throws InvalidSyntaxException {
+        Mockito.when(context.getServiceReferences(Service.class, null))
+                .thenReturn(Collections.emptyList());
+
+        Assert.assertNull(lookup.lookup(Service.class));
+        Assert.assertTrue(lookup.lookupAll(Service.class).isEmpty());
+
+        Mockito.verify(context, Mockito.times(1))
+                .getServiceReferences(Service.class, null);
+    }
+
+    @Test
+    public void lookup_concreteClasses_listenerIsLimitedToLookedUpClasses()
+            throws InvalidSyntaxException {
+        registerService();
+        Mockito.when(context.getServiceReferences(String.class, null))
+                .thenReturn(Collections.emptyList());
+
+        lookup.lookup(Service.class);
+        ServiceListener serviceListener = listener.get();
+        Assert.assertEquals("(|(objectClass=" + Service.class.getName() + "))",
+                filter.get());
+
+        lookup.lookup(String.class);
+        lookup.lookup(Service.class);
+
+        // the filter of the same listener is replaced
+        Assert.assertSame(serviceListener, listener.get());
+        Assert.assertEquals("(|(objectClass=" + Service.class.getName()
+                + ")(objectClass=java.lang.String))", filter.get());
+        Mockito.verify(context, Mockito.times(2)).addServiceListener(
+                Mockito.any(), Mockito.anyString());
+    }
+
+    @Test
+    public void serviceChanged_cachedServicesAreReleased()
+            throws InvalidSyntaxException {
+        registerService();
+        lookup.lookup(Service.class);
+
+        listener.get().serviceChanged(
+                new ServiceEvent(ServiceEvent.MODIFIED, reference));
+
+        Mockito.verify(context, Mockito.times(1)).ungetService(reference);
+        Assert.assertSame(service, lookup.lookup(Service.class));
+        Mockito.verify(context, Mockito.times(2))
+                .getServiceReferences(Service.class, null);
+    }
+
+    @Test
+    public void close_servicesAreReleasedAndNotLookedUp()
+            throws InvalidSyntaxException {
+        registerService();
+        lookup.lookup(Service.class);
+
+        lookup.close();
+
+        Mockito.verify(context, Mockito.times(1)).ungetService(reference);
+        Mockito.verify(context, Mockito.times(1))
+                .removeServiceListener(listener.get());
+        Assert.assertNull(lookup.lookup(Service.class));
+        Mockito.verify(context, Mockito.times(1))
+                .getServiceReferences(Service.class, null);
+    }
+
+    @Test
+    public void lookup_spi_snapshotIsReusedUntilServiceEvent()
+            throws InvalidSyntaxException {
+        AtomicReference<ServiceListener> trackerListener = new AtomicReference<>();
+        Mockito.doAnswer(invocation -> {
+            trackerListener.set(invocation.getArgument(0));
+            return null;
+        }).when(context).addServiceListener(Mockito.any(),
+                Mockito.anyString());
+        ServiceReference<Runnable> runnableReference = registerRunnable(
+                () -> {
+                });
+
+        Runnable runnable = lookup.lookup(Runnable.class);
+        Assert.assertSame(runnable, lookup.lookup(Runnable.class));
+        Mockito.verify(context, Mockito.times(1))
+                .getService(runnableReference);
+
+        trackerListener.get().serviceChanged(new ServiceEvent(
+                ServiceEvent.UNREGISTERING, runnableReference));
+
+        Assert.assertNull(lookup.lookup(Runnable.class));
+        Mockito.verify(context, Mockito.times(1))
+                .ungetService(runnableReference);
+    }
+
+    @Test
+    public void lookupAll_closedLookup_noServicesAreTracked()
+            throws InvalidSyntaxException {
+        registerRunnable(() -> {
+        });
+
+        lookup.close();
+
+        Assert.assertTrue(lookup.lookupAll(Runnable.class).isEmpty());
+        Mockito.verify(context, Mockito.never())
+                .addServiceListener(Mockito.any(), Mockito.anyString());
+        Mockito.verify(context, Mockito.never())
+                .getService(Mockito.any());
+    }
+
+    @Test
+    public void lookupAll_resultIsModifiableCopy()
+            throws InvalidSyntaxException {
+        registerService();
+        Runnable runnable = () -> {
+        };
+        registerRunnable(runnable);
+
+        Collection<Service> services = lookup.lookupAll(Service.class);
+        services.clear();
+        Collection<Runnable> runnables = lookup.lookupAll(Runnable.class);
+        runnables.clear();
+
+        Assert.assertSame(service, lookup.lookup(Service.class));
+        Assert.assertSame(runnable, lookup.lookup(Runnable.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void addingService_executorIsShutDown_initializationFailed()
+            throws InterruptedException {
+        VaadinServletContext vaadinContext = createVaadinContext();
+        ServletInitRequirementsTracker tracker = new ServletInitRequirementsTracker(
+                bundle, vaadinContext, null, command -> {
+                    throw new RejectedExecutionException();
+                }, null);
+
+        tracker.addingService(Mockito.mock(ServiceReference.class));
+
+        ContextInitialization initialization = vaadinContext
+                .getAttribute(ContextInitialization.class);
+        Assert.assertTrue(initialization.isDone());
+        Assert.assertTrue(initialization.isFailed());
+        Assert.assertTrue(initialization.await(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void addingService_reinitialization_newInitializationIsAwaited() {
+        VaadinServletContext vaadinContext = createVaadinContext();
+        List<Runnable> commands = new ArrayList<>();
+        ServletInitRequirementsTracker tracker = new ServletInitRequirementsTracker(
+                bundle, vaadinContext, null, commands::add, null);
+        tracker.addingService(Mockito.mock(ServiceReference.class));
+        ContextInitialization initialization = vaadinContext
+                .getAttribute(ContextInitialization.class);
+        initialization.run(() -> {
+        });
+
+        tracker.addingService(Mockito.mock(ServiceReference.class));
+
+        ContextInitialization reinitialization = vaadinContext
+                .getAttribute(ContextInitialization.class);
+        Assert.assertNotSame(initialization, reinitialization);
+        Assert.assertFalse(reinitialization.isDone());
+        Assert.assertEquals(2, commands.size());
+    }
+
+    private VaadinServletContext createVaadinContext() {
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        ServletContext servletContext = Mockito.mock(ServletContext.class);
+        Mockito.when(servletContext.getAttribute(Mockito.anyString()))
+                .thenAnswer(invocation -> attributes
+                        .get(invocation.getArgument(0)));
+        Mockito.doAnswer(invocation -> attributes.put(
+                invocation.getArgument(0), invocation.getArgument(1)))
+                .when(servletContext)
+                .setAttribute(Mockito.anyString(), Mockito.any());
+        return new VaadinServletContext(servletContext);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ServiceReference<Runnable> registerRunnable(Runnable runnable)
+            throws InvalidSyntaxException {
+        ServiceReference<Runnable> runnableReference = Mockito
+                .mock(ServiceReference.class);
+        Mockito.when(context.getServiceReferences(Runnable.class.getName(),
+                null)).thenReturn(new ServiceReference<?>[] {
+                        runnableReference });
+        Mockito.when(context.getService(runnableReference))
+                .thenReturn(runnable);
+        return runnableReference;
+    }
+
+    private void registerService() throws InvalidSyntaxException {
+        Mockito.when(context.getServiceReferences(Service.class, null))
+                .thenReturn(Collections.singletonList(reference));
+    }
+
+}
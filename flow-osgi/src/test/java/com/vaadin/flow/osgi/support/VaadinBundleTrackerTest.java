@@ -0,0 +1,611 @@
+/**
+ * Copyright (C) 2020 Vaadin Ltd
+ *
+ * This program is available under Vaadin Commercial License and Service Terms.
+ *
+ * See <https://vaadin.com/commercial-license-and-service-terms> for the full
+ * license.
+ */
+package com.vaadin.flow.osgi.support;
+
+import javax.servlet.ServletContainerInitializer;
+import javax.servlet.ServletContext;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRequirement;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+
+import com.vaadin.flow.server.startup.ClassLoaderAwareServletContainerInitializer;
+
+public class VaadinBundleTrackerTest {
+
+    private static final String SERVICES_DESCRIPTOR = "META-INF/services/"
+            + ServletContainerInitializer.class.getName();
+
+    private static final AtomicReference<Set<Class<?>>> PROCESSED = new AtomicReference<>();
+
+    private static final AtomicInteger PROCESS_COUNT = new AtomicInteger();
+
+    public static class RecordingInitializer
+            implements ClassLoaderAwareServletContainerInitializer {
+
+        @Override
+        public void process(Set<Class<?>> classes, ServletContext context) {
+            PROCESSED.set(classes);
+            PROCESS_COUNT.incrementAndGet();
+        }
+    }
+
+    public static class First {
+    }
+
+    public static class Second {
+    }
+
+    public static class Folder extends TemporaryFolder {
+    }
+
+    public static class SubFolder extends Folder {
+    }
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Map<String, String> properties = new HashMap<>();
+
+    private final BundleContext context = Mockito.mock(BundleContext.class);
+
+    private final BundleContext serverContext = Mockito
+            .mock(BundleContext.class);
+
+    private final List<Bundle> bundles = new ArrayList<>();
+
+    private final ServletContainerInitializerClasses initializerClasses = new ServletContainerInitializerClasses();
+
+    // the contexts are referenced weakly by the initializer classes
+    private final ServletContext servletContext = Mockito
+            .mock(ServletContext.class);
+
+    private final CountDownLatch activeBundlesScan = new CountDownLatch(1);
+
+    private final Bundle framework = Mockito.mock(Bundle.class);
+
+    private Bundle server;
+
+    private URL descriptor;
+
+    private VaadinBundleTracker tracker;
+
+    @Before
+    public void setUp() throws Exception {
+        PROCESSED.set(null);
+        PROCESS_COUNT.set(0);
+        Mockito.when(context.getProperty(Mockito.anyString())).thenAnswer(
+                invocation -> properties.get(invocation.getArgument(0)));
+        Mockito.when(framework.getState()).thenReturn(Bundle.ACTIVE);
+        Mockito.when(context.getBundle(0L)).thenReturn(framework);
+        // the scan of the active bundles blocks the tracker executor until
+        // the latch is released
+        Mockito.when(serverContext.getBundles()).thenAnswer(invocation -> {
+            activeBundlesScan.await(5, TimeUnit.SECONDS);
+            return bundles.toArray(new Bundle[0]);
+        });
+
+        server = Mockito.mock(Bundle.class);
+        Mockito.when(server.getBundleId()).thenReturn(1L);
+        Mockito.when(server.getSymbolicName())
+                .thenReturn("com.vaadin.flow.server");
+        Mockito.when(server.getState()).thenReturn(Bundle.ACTIVE);
+        Mockito.when(server.getBundleContext()).thenReturn(serverContext);
+        File descriptorFile = temporaryFolder.newFile();
+        Files.write(descriptorFile.toPath(),
+                ("# servlet context initializers\n"
+                        + RecordingInitializer.class.getName() + " # comment\n")
+                                .getBytes(StandardCharsets.UTF_8));
+        descriptor = descriptorFile.toURI().toURL();
+        Mockito.when(server.getEntry(SERVICES_DESCRIPTOR))
+                .thenReturn(descriptor);
+        Mockito.when(server.loadClass(Mockito.anyString())).thenAnswer(
+                invocation -> Class.forName(invocation.getArgument(0)));
+
+        initializerClasses.activate(context);
+        initializerClasses.addContext(servletContext);
+    }
+
+    @After
+    public void tearDown() {
+        activeBundlesScan.countDown();
+        if (tracker != null) {
+            tracker.close();
+        }
+        initializerClasses.deactivate();
+    }
+
+    @Test
+    public void addingBundle_serverWithServicesDescriptor_serverIsNotScanned()
+            throws Exception {
+        startServer();
+
+        Assert.assertTrue(isInitializerSet());
+        Mockito.verify(server, Mockito.never()).adapt(BundleWiring.class);
+    }
+
+    @Test
+    public void addingBundle_serverWithoutServicesDescriptor_serverIsScanned()
+            throws Exception {
+        Mockito.when(server.getEntry(SERVICES_DESCRIPTOR)).thenReturn(null);
+        Mockito.when(server.getHeaders()).thenReturn(new Hashtable<>());
+        BundleWiring wiring = mockWiring(RecordingInitializer.class,
+                First.class);
+        Mockito.when(server.adapt(BundleWiring.class)).thenReturn(wiring);
+
+        startServer();
+
+        Assert.assertTrue(isInitializerSet());
+        Mockito.verify(server).loadClass(First.class.getName());
+    }
+
+    @Test
+    public void addingBundle_scanIsCompleted_scanIsNotTracked()
+            throws Exception {
+        startServer();
+        activeBundlesScan.countDown();
+        Bundle extender = mockExtender(2L, mockRevision(), First.class);
+
+        tracker.addingBundle(extender,
+                new BundleEvent(BundleEvent.STARTED, extender));
+
+        await(() -> isProcessed(First.class));
+        await(() -> tracker.getScansCount() == 0);
+    }
+
+    @Test
+    public void addingBundle_bundleIsStoppedBeforeScan_scanIsCancelled()
+            throws Exception {
+        startServer();
+        Bundle extender = mockExtender(2L, mockRevision(), First.class);
+        tracker.addingBundle(extender,
+                new BundleEvent(BundleEvent.STARTED, extender));
+        Assert.assertEquals(1, tracker.getScansCount());
+
+        Mockito.when(extender.getState()).thenReturn(Bundle.RESOLVED);
+        tracker.addingBundle(extender,
+                new BundleEvent(BundleEvent.STOPPED, extender));
+        Assert.assertEquals(0, tracker.getScansCount());
+
+        // the scan of another bundle is completed after the cancelled one
+        Bundle another = mockExtender(3L, mockRevision(), Second.class);
+        tracker.addingBundle(another,
+                new BundleEvent(BundleEvent.STARTED, another));
+        activeBundlesScan.countDown();
+        await(() -> isProcessed(Second.class));
+        Assert.assertFalse(isProcessed(First.class));
+        Mockito.verify(extender, Mockito.never())
+                .loadClass(First.class.getName());
+    }
+
+    @Test
+    public void addingBundle_bundleIsRestartedBeforeScan_newRevisionIsScannedOnce()
+            throws Exception {
+        startServer();
+        Bundle extender = mockExtender(2L, mockRevision(), First.class);
+        tracker.addingBundle(extender,
+                new BundleEvent(BundleEvent.STARTED, extender));
+        Mockito.when(extender.getState()).thenReturn(Bundle.RESOLVED);
+        tracker.addingBundle(extender,
+                new BundleEvent(BundleEvent.STOPPED, extender));
+
+        BundleRevision revision = mockRevision();
+        Mockito.when(extender.adapt(BundleRevision.class))
+                .thenReturn(revision);
+        Mockito.when(extender.getState()).thenReturn(Bundle.ACTIVE);
+        tracker.addingBundle(extender,
+                new BundleEvent(BundleEvent.STARTED, extender));
+        Assert.assertEquals(1, tracker.getScansCount());
+
+        activeBundlesScan.countDown();
+        await(() -> isProcessed(First.class));
+        await(() -> tracker.getScansCount() == 0);
+        Mockito.verify(extender, Mockito.times(1))
+                .loadClass(First.class.getName());
+    }
+
+    @Test
+    public void addingBundle_bundleIsStoppedBeforeDiscovery_nothingIsRun()
+            throws Exception {
+        tracker = new VaadinBundleTracker(context, initializerClasses);
+        Bundle extender = mockExtender(2L, mockRevision(), First.class);
+        Mockito.when(extender.getState()).thenReturn(Bundle.RESOLVED);
+
+        tracker.addingBundle(extender,
+                new BundleEvent(BundleEvent.STOPPED, extender));
+
+        Assert.assertFalse(initializerClasses.hasInitializers());
+        Assert.assertEquals(0, PROCESS_COUNT.get());
+    }
+
+    @Test
+    public void addingBundle_initializersAreNotDiscovered_bundleIsPending()
+            throws Exception {
+        // the discovery fails since the bundle is refreshed concurrently
+        AtomicBoolean refreshed = new AtomicBoolean(true);
+        Mockito.when(server.getEntry(SERVICES_DESCRIPTOR)).thenAnswer(
+                invocation -> refreshed.get() ? null : descriptor);
+        Mockito.when(server.getHeaders()).thenReturn(new Hashtable<>());
+        Mockito.when(server.adapt(BundleWiring.class))
+                .thenThrow(new IllegalStateException("Refreshed"));
+        activeBundlesScan.countDown();
+        tracker = new VaadinBundleTracker(context, initializerClasses);
+        tracker.addingBundle(server,
+                new BundleEvent(BundleEvent.STARTED, server));
+        Bundle extender = mockExtender(2L, mockRevision(), First.class);
+
+        tracker.addingBundle(extender,
+                new BundleEvent(BundleEvent.STARTED, extender));
+
+        await(() -> tracker.getPendingBundlesCount() == 1);
+        Assert.assertFalse(initializerClasses.hasInitializers());
+        Mockito.verify(extender, Mockito.never())
+                .loadClass(First.class.getName());
+
+        // the pending bundle is scanned once the server is started again
+        refreshed.set(false);
+        tracker.addingBundle(server,
+                new BundleEvent(BundleEvent.STARTED, server));
+
+        await(() -> isProcessed(First.class));
+        Assert.assertEquals(0, tracker.getPendingBundlesCount());
+    }
+
+    @Test
+    public void frameworkEvent_frameworkIsStarted_scanResultsAreReportedAtOnce()
+            throws Exception {
+        properties.put(VaadinBundleTracker.AWAIT_FRAMEWORK_PROPERTY,
+                Boolean.TRUE.toString());
+        Mockito.when(framework.getState()).thenReturn(Bundle.STARTING);
+        AtomicReference<FrameworkListener> listener = new AtomicReference<>();
+        Mockito.doAnswer(invocation -> {
+            listener.set(invocation.getArgument(0));
+            return null;
+        }).when(context).addFrameworkListener(Mockito.any());
+        startServer();
+        activeBundlesScan.countDown();
+        Bundle first = mockExtender(2L, mockRevision(), First.class);
+        Bundle second = mockExtender(3L, mockRevision(), Second.class);
+        tracker.addingBundle(first,
+                new BundleEvent(BundleEvent.STARTED, first));
+        tracker.addingBundle(second,
+                new BundleEvent(BundleEvent.STARTED, second));
+        await(() -> tracker.getScansCount() == 0);
+        Assert.assertEquals(0, PROCESS_COUNT.get());
+
+        listener.get().frameworkEvent(
+                new FrameworkEvent(FrameworkEvent.STARTED, framework, null));
+
+        await(() -> isProcessed(First.class) && isProcessed(Second.class));
+        Assert.assertEquals(1, PROCESS_COUNT.get());
+    }
+
+    @Test
+    public void addingBundle_coalesceWindow_scanResultsAreReportedAtOnce()
+            throws Exception {
+        properties.put(VaadinBundleTracker.COALESCE_WINDOW_PROPERTY, "200");
+        startServer();
+        activeBundlesScan.countDown();
+        Bundle first = mockExtender(2L, mockRevision(), First.class);
+        Bundle second = mockExtender(3L, mockRevision(), Second.class);
+
+        tracker.addingBundle(first,
+                new BundleEvent(BundleEvent.STARTED, first));
+        tracker.addingBundle(second,
+                new BundleEvent(BundleEvent.STARTED, second));
+
+        await(() -> isProcessed(First.class) && isProcessed(Second.class));
+        Assert.assertEquals(1, PROCESS_COUNT.get());
+    }
+
+    @Test
+    public void addingBundle_wiringMode_bundlesImportingFlowAreScanned()
+            throws Exception {
+        properties.put(VaadinBundleTracker.EXTENDER_WIRING_PROPERTY,
+                Boolean.TRUE.toString());
+        startServer();
+        activeBundlesScan.countDown();
+        Bundle other = mockExtender(2L, mockWiredRevision("org.slf4j"),
+                Second.class);
+        Bundle extender = mockExtender(3L,
+                mockWiredRevision("org.slf4j", "com.vaadin.flow.component"),
+                First.class);
+
+        tracker.addingBundle(other,
+                new BundleEvent(BundleEvent.STARTED, other));
+        tracker.addingBundle(extender,
+                new BundleEvent(BundleEvent.STARTED, extender));
+
+        await(() -> isProcessed(First.class));
+        Assert.assertFalse(isProcessed(Second.class));
+        Mockito.verify(other, Mockito.never())
+                .loadClass(Second.class.getName());
+    }
+
+    @Test
+    public void addingBundle_sameRevision_bundleIsClassifiedOnce()
+            throws Exception {
+        properties.put(VaadinBundleTracker.EXTENDER_WIRING_PROPERTY,
+                Boolean.TRUE.toString());
+        startServer();
+        activeBundlesScan.countDown();
+        BundleRevision revision = mockWiredRevision("com.vaadin.flow.server");
+        Bundle extender = mockExtender(2L, revision, First.class);
+        Mockito.when(extender.getState()).thenReturn(Bundle.RESOLVED);
+
+        tracker.addingBundle(extender,
+                new BundleEvent(BundleEvent.STOPPED, extender));
+        tracker.addingBundle(extender,
+                new BundleEvent(BundleEvent.STOPPED, extender));
+
+        Mockito.verify(revision.getWiring(), Mockito.times(1))
+                .getRequiredWires(PackageNamespace.PACKAGE_NAMESPACE);
+
+        // the bundle is updated: the new revision is classified again
+        BundleRevision updated = mockWiredRevision("com.vaadin.flow.server");
+        Mockito.when(extender.adapt(BundleRevision.class)).thenReturn(updated);
+        tracker.addingBundle(extender,
+                new BundleEvent(BundleEvent.STOPPED, extender));
+
+        Mockito.verify(updated.getWiring(), Mockito.times(1))
+                .getRequiredWires(PackageNamespace.PACKAGE_NAMESPACE);
+    }
+
+    @Test
+    public void addingBundle_classesOfUnwiredOptionalImports_classesAreNotLoaded()
+            throws Exception {
+        startServer();
+        activeBundlesScan.countDown();
+        BundleRevision revision = mockWiredRevision("com.vaadin.flow.server");
+        BundleRequirement requirement = Mockito.mock(BundleRequirement.class);
+        Map<String, String> directives = new HashMap<>();
+        directives.put(PackageNamespace.REQUIREMENT_RESOLUTION_DIRECTIVE,
+                PackageNamespace.RESOLUTION_OPTIONAL);
+        directives.put(PackageNamespace.REQUIREMENT_FILTER_DIRECTIVE,
+                "(&(osgi.wiring.package=org.junit.rules)"
+                        + "(version>=4.12.0)(!(version>=5.0.0)))");
+        Mockito.when(requirement.getDirectives()).thenReturn(directives);
+        Mockito.when(revision
+                .getDeclaredRequirements(PackageNamespace.PACKAGE_NAMESPACE))
+                .thenReturn(Collections.singletonList(requirement));
+        Bundle extender = mockExtender(2L, revision, First.class,
+                Folder.class, SubFolder.class);
+
+        tracker.addingBundle(extender,
+                new BundleEvent(BundleEvent.STARTED, extender));
+
+        await(() -> isProcessed(First.class));
+        Mockito.verify(extender, Mockito.never())
+                .loadClass(Folder.class.getName());
+        Mockito.verify(extender, Mockito.never())
+                .loadClass(SubFolder.class.getName());
+    }
+
+    @Test
+    public void addingBundle_scanThreadsAndLargeBundle_sameResultAsSequentialScan()
+            throws Exception {
+        activeBundlesScan.countDown();
+        // enough classes in several packages to load every package as a
+        // separate task
+        List<String> classNames = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            classNames.add("com.example.package" + i % 6 + ".Class" + i);
+        }
+        List<String> sequentialLoads = Collections
+                .synchronizedList(new ArrayList<>());
+        Set<Class<?>> sequential = scanExtender(
+                mockExtender(classNames, sequentialLoads));
+
+        properties.put(VaadinBundleTracker.SCAN_THREADS_PROPERTY, "4");
+        List<String> parallelLoads = Collections
+                .synchronizedList(new ArrayList<>());
+        Set<Class<?>> parallel = scanExtender(
+                mockExtender(classNames, parallelLoads));
+
+        Assert.assertEquals(sequential, parallel);
+        Assert.assertEquals(classNames, sequentialLoads);
+        // every class is loaded once, the order depends on the tasks
+        Assert.assertEquals(classNames.size(), parallelLoads.size());
+        Assert.assertEquals(new HashSet<>(classNames),
+                new HashSet<>(parallelLoads));
+    }
+
+    /**
+     * Scans the {@code extender} by a new tracker configured via the current
+     * properties and returns the classes passed to the initializer.
+     */
+    private Set<Class<?>> scanExtender(Bundle extender)
+            throws InterruptedException {
+        PROCESSED.set(null);
+        ServletContainerInitializerClasses classes = new ServletContainerInitializerClasses();
+        classes.activate(context);
+        classes.addContext(servletContext);
+        VaadinBundleTracker scanner = new VaadinBundleTracker(context,
+                classes);
+        try {
+            scanner.addingBundle(server,
+                    new BundleEvent(BundleEvent.STARTED, server));
+            await(classes::hasInitializers);
+            scanner.addingBundle(extender,
+                    new BundleEvent(BundleEvent.STARTED, extender));
+            await(() -> isProcessed(First.class));
+            return PROCESSED.get();
+        } finally {
+            scanner.close();
+            classes.deactivate();
+        }
+    }
+
+    /**
+     * Mocks an extender containing the {@code classNames} which are loaded
+     * as one of the test classes and recorded in the {@code loads} list.
+     */
+    private static Bundle mockExtender(List<String> classNames,
+            List<String> loads) throws ClassNotFoundException {
+        Class<?>[] classes = { First.class, Second.class, Folder.class,
+                SubFolder.class };
+        Bundle bundle = Mockito.mock(Bundle.class);
+        Mockito.when(bundle.getBundleId()).thenReturn(2L);
+        Mockito.when(bundle.getSymbolicName()).thenReturn("extender2");
+        Mockito.when(bundle.getState()).thenReturn(Bundle.ACTIVE);
+        Hashtable<String, String> headers = new Hashtable<>();
+        headers.put("Vaadin-OSGi-Extender", Boolean.TRUE.toString());
+        Mockito.when(bundle.getHeaders()).thenReturn(headers);
+        Mockito.when(bundle.adapt(BundleRevision.class))
+                .thenReturn(mockRevision());
+        BundleWiring wiring = Mockito.mock(BundleWiring.class);
+        Mockito.when(wiring.listResources("/", "*.class",
+                BundleWiring.LISTRESOURCES_RECURSE
+                        | BundleWiring.LISTRESOURCES_LOCAL))
+                .thenReturn(classNames.stream()
+                        .map(name -> name.replace('.', '/') + ".class")
+                        .collect(Collectors.toList()));
+        Mockito.when(bundle.adapt(BundleWiring.class)).thenReturn(wiring);
+        Mockito.when(bundle.loadClass(Mockito.anyString()))
+                .thenAnswer(invocation -> {
+                    String name = invocation.getArgument(0);
+                    loads.add(name);
+                    return classes[classNames.indexOf(name)
+                            % classes.length];
+                });
+        return bundle;
+    }
+
+    private void startServer() throws InterruptedException {
+        tracker = new VaadinBundleTracker(context, initializerClasses);
+        tracker.addingBundle(server,
+                new BundleEvent(BundleEvent.STARTED, server));
+        await(initializerClasses::hasInitializers);
+    }
+
+    private Bundle mockExtender(long id, BundleRevision revision,
+            Class<?>... classes) throws ClassNotFoundException {
+        Bundle bundle = Mockito.mock(Bundle.class);
+        Mockito.when(bundle.getBundleId()).thenReturn(id);
+        Mockito.when(bundle.getSymbolicName()).thenReturn("extender" + id);
+        Mockito.when(bundle.getState()).thenReturn(Bundle.ACTIVE);
+        Hashtable<String, String> headers = new Hashtable<>();
+        headers.put("Vaadin-OSGi-Extender", Boolean.TRUE.toString());
+        Mockito.when(bundle.getHeaders()).thenReturn(headers);
+        Mockito.when(bundle.adapt(BundleRevision.class)).thenReturn(revision);
+        BundleWiring wiring = mockWiring(classes);
+        Mockito.when(bundle.adapt(BundleWiring.class)).thenReturn(wiring);
+        for (Class<?> clazz : classes) {
+            Mockito.when(bundle.loadClass(clazz.getName()))
+                    .thenAnswer(invocation -> clazz);
+            String path = clazz.getName().replace('.', '/') + ".class";
+            Mockito.when(bundle.getEntry(path))
+                    .thenReturn(clazz.getResource('/' + path));
+        }
+        return bundle;
+    }
+
+    private static BundleWiring mockWiring(Class<?>... classes) {
+        BundleWiring wiring = Mockito.mock(BundleWiring.class);
+        Mockito.when(wiring.listResources("/", "*.class",
+                BundleWiring.LISTRESOURCES_RECURSE
+                        | BundleWiring.LISTRESOURCES_LOCAL))
+                .thenReturn(Stream.of(classes)
+                        .map(clazz -> clazz.getName().replace('.', '/')
+                                + ".class")
+                        .collect(Collectors.toList()));
+        return wiring;
+    }
+
+    private static BundleRevision mockRevision() {
+        BundleRevision revision = Mockito.mock(BundleRevision.class);
+        Mockito.when(revision.getDeclaredRequirements(Mockito.anyString()))
+                .thenReturn(Collections.emptyList());
+        return revision;
+    }
+
+    /**
+     * Checks whether the recording initializer is discovered: it's run once
+     * a new context is added.
+     */
+    private boolean isInitializerSet() {
+        initializerClasses.addContext(Mockito.mock(ServletContext.class));
+        return PROCESSED.get() != null;
+    }
+
+    /**
+     * Creates a resolved revision which imports the {@code packages}.
+     */
+    private static BundleRevision mockWiredRevision(String... packages) {
+        List<BundleWire> wires = new ArrayList<>();
+        for (String pkg : packages) {
+            BundleCapability capability = Mockito
+                    .mock(BundleCapability.class);
+            Mockito.when(capability.getAttributes()).thenReturn(Collections
+                    .singletonMap(PackageNamespace.PACKAGE_NAMESPACE, pkg));
+            BundleWire wire = Mockito.mock(BundleWire.class);
+            Mockito.when(wire.getCapability()).thenReturn(capability);
+            wires.add(wire);
+        }
+        BundleWiring wiring = Mockito.mock(BundleWiring.class);
+        Mockito.when(
+                wiring.getRequiredWires(PackageNamespace.PACKAGE_NAMESPACE))
+                .thenReturn(wires);
+        BundleRevision revision = mockRevision();
+        Mockito.when(revision.getWiring()).thenReturn(wiring);
+        return revision;
+    }
+
+    private static boolean isProcessed(Class<?> clazz) {
+        Set<Class<?>> processed = PROCESSED.get();
+        return processed != null && processed.contains(clazz);
+    }
+
+    private static void await(BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("The condition is not met in time",
+                    System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+}